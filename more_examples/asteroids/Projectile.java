@@ -12,6 +12,8 @@ public class Projectile extends Rectangle {
     setFilled(false);
     setWidth(10);
     setHeight(1);
+    // thin and fast, so it could skip past asteroids between frames
+    setSubstepping(true);
     setLaunched(false);
   }
 
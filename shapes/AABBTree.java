@@ -0,0 +1,429 @@
+package shapes;
+
+import java.util.*;
+
+// A dynamic bounding volume hierarchy over shapes' bounding boxes. Leaves
+// hold "fat" boxes (a shape's bounding box plus MARGIN on every side) so that
+// small movements don't require the tree to be restructured. The tree is kept
+// balanced with rotations, so queries take O(log n + k) time.
+class AABBTree {
+  private static final double MARGIN = 4.0;
+  private static final int NULL = -1;
+
+  // nodes are stored in parallel arrays and referred to by index
+  private double[] left, bottom, right, top;
+  private int[] parent, child1, child2, height;
+  private Shape[] shape;
+  private int capacity;
+  private int root;
+  private int freeList;
+
+  private Map<Shape, Integer> leafOf;
+
+  AABBTree() {
+    root = NULL;
+    leafOf = new HashMap<Shape, Integer>();
+    capacity = 0;
+    freeList = NULL;
+    grow(16);
+  }
+
+  int size() {
+    return leafOf.size();
+  }
+
+  // Inserts shape, or refits it if its bounding box has left its fat box.
+  void update(Shape s) {
+    double l = s.getLeft();
+    double b = s.getBottom();
+    double r = s.getRight();
+    double t = s.getTop();
+    Integer existing = leafOf.get(s);
+    if (existing != null) {
+      int leaf = existing;
+      if (left[leaf] <= l && bottom[leaf] <= b &&
+          right[leaf] >= r && top[leaf] >= t) {
+        return;
+      }
+      removeLeaf(leaf);
+      freeNode(leaf);
+    }
+
+    int leaf = allocateNode();
+    left[leaf] = l - MARGIN;
+    bottom[leaf] = b - MARGIN;
+    right[leaf] = r + MARGIN;
+    top[leaf] = t + MARGIN;
+    shape[leaf] = s;
+    height[leaf] = 0;
+    insertLeaf(leaf);
+    leafOf.put(s, leaf);
+  }
+
+  // Inserts many shapes at once. The new shapes are built into a balanced
+  // subtree of their own, top down, which then goes into the tree as a
+  // whole; that's much faster than inserting them one by one. Shapes already
+  // in the tree are just updated.
+  void insertAll(java.util.List<Shape> shapes) {
+    reserve(shapes.size());
+    int[] leaves = new int[shapes.size()];
+    int count = 0;
+    for (Shape s : shapes) {
+      if (leafOf.containsKey(s)) {
+        update(s);
+        continue;
+      }
+      int leaf = allocateNode();
+      left[leaf] = s.getLeft() - MARGIN;
+      bottom[leaf] = s.getBottom() - MARGIN;
+      right[leaf] = s.getRight() + MARGIN;
+      top[leaf] = s.getTop() + MARGIN;
+      shape[leaf] = s;
+      height[leaf] = 0;
+      leafOf.put(s, leaf);
+      leaves[count++] = leaf;
+    }
+    if (count > 0) {
+      insertLeaf(build(leaves, 0, count));
+    }
+  }
+
+  void remove(Shape s) {
+    Integer leaf = leafOf.remove(s);
+    if (leaf == null) {
+      return;
+    }
+    removeLeaf(leaf);
+    freeNode(leaf);
+  }
+
+  // Adds to found every shape whose fat box overlaps the given box. Callers
+  // should check the shape's real bounds if they need an exact answer.
+  void query(
+    double l,
+    double b,
+    double r,
+    double t,
+    java.util.List<Shape> found
+  ) {
+    if (root == NULL) {
+      return;
+    }
+    int[] stack = new int[Math.max(16, 2 * height[root] + 2)];
+    int count = 0;
+    stack[count++] = root;
+    while (count > 0) {
+      int node = stack[--count];
+      if (left[node] > r || right[node] < l ||
+          bottom[node] > t || top[node] < b) {
+        continue;
+      }
+      if (isLeaf(node)) {
+        found.add(shape[node]);
+      } else {
+        if (count + 2 > stack.length) {
+          stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[count++] = child1[node];
+        stack[count++] = child2[node];
+      }
+    }
+  }
+
+  private boolean isLeaf(int node) {
+    return child1[node] == NULL;
+  }
+
+  private void insertLeaf(int leaf) {
+    if (root == NULL) {
+      root = leaf;
+      parent[root] = NULL;
+      return;
+    }
+
+    // find the best sibling for the new leaf, using the perimeter of the
+    // boxes that would have to grow as the cost
+    int index = root;
+    while (!isLeaf(index)) {
+      int c1 = child1[index];
+      int c2 = child2[index];
+
+      double area = perimeter(index);
+      double combinedArea = combinedPerimeter(index, leaf);
+      double cost = 2.0 * combinedArea;
+      double inheritanceCost = 2.0 * (combinedArea - area);
+
+      double cost1 = descentCost(c1, leaf) + inheritanceCost;
+      double cost2 = descentCost(c2, leaf) + inheritanceCost;
+
+      if (cost < cost1 && cost < cost2) {
+        break;
+      }
+      index = cost1 < cost2 ? c1 : c2;
+    }
+    int sibling = index;
+
+    int oldParent = parent[sibling];
+    int newParent = allocateNode();
+    parent[newParent] = oldParent;
+    shape[newParent] = null;
+    combine(newParent, leaf, sibling);
+    height[newParent] = 1 + Math.max(height[sibling], height[leaf]);
+
+    if (oldParent != NULL) {
+      if (child1[oldParent] == sibling) {
+        child1[oldParent] = newParent;
+      } else {
+        child2[oldParent] = newParent;
+      }
+    } else {
+      root = newParent;
+    }
+    child1[newParent] = sibling;
+    child2[newParent] = leaf;
+    parent[sibling] = newParent;
+    parent[leaf] = newParent;
+
+    refitAncestors(parent[leaf]);
+  }
+
+  private void removeLeaf(int leaf) {
+    if (leaf == root) {
+      root = NULL;
+      return;
+    }
+
+    int oldParent = parent[leaf];
+    int grandParent = parent[oldParent];
+    int sibling =
+      child1[oldParent] == leaf ? child2[oldParent] : child1[oldParent];
+
+    if (grandParent != NULL) {
+      if (child1[grandParent] == oldParent) {
+        child1[grandParent] = sibling;
+      } else {
+        child2[grandParent] = sibling;
+      }
+      parent[sibling] = grandParent;
+      freeNode(oldParent);
+      refitAncestors(grandParent);
+    } else {
+      root = sibling;
+      parent[sibling] = NULL;
+      freeNode(oldParent);
+    }
+  }
+
+  // walks from index to the root, rebalancing and refitting each node
+  private void refitAncestors(int index) {
+    while (index != NULL) {
+      index = balance(index);
+      int c1 = child1[index];
+      int c2 = child2[index];
+      height[index] = 1 + Math.max(height[c1], height[c2]);
+      combine(index, c1, c2);
+      index = parent[index];
+    }
+  }
+
+  // If a is imbalanced, rotates its taller child up and returns the index of
+  // the node that took a's place.
+  private int balance(int a) {
+    if (isLeaf(a) || height[a] < 2) {
+      return a;
+    }
+
+    int b = child1[a];
+    int c = child2[a];
+    int balance = height[c] - height[b];
+
+    if (balance > 1) {
+      rotateUp(a, c, b, false);
+      return c;
+    }
+    if (balance < -1) {
+      rotateUp(a, b, c, true);
+      return b;
+    }
+    return a;
+  }
+
+  // Makes riser (a child of a) the parent of a. other is a's other child.
+  private void rotateUp(int a, int riser, int other, boolean riserIsFirst) {
+    int f = child1[riser];
+    int g = child2[riser];
+
+    child1[riser] = a;
+    parent[riser] = parent[a];
+    parent[a] = riser;
+
+    if (parent[riser] != NULL) {
+      if (child1[parent[riser]] == a) {
+        child1[parent[riser]] = riser;
+      } else {
+        child2[parent[riser]] = riser;
+      }
+    } else {
+      root = riser;
+    }
+
+    // the taller grandchild stays under riser; the shorter one moves to a
+    int keep = height[f] > height[g] ? f : g;
+    int move = keep == f ? g : f;
+    child2[riser] = keep;
+    if (riserIsFirst) {
+      child1[a] = move;
+    } else {
+      child2[a] = move;
+    }
+    parent[move] = a;
+
+    combine(a, other, move);
+    combine(riser, a, keep);
+    height[a] = 1 + Math.max(height[other], height[move]);
+    height[riser] = 1 + Math.max(height[a], height[keep]);
+  }
+
+  // Builds a subtree over leaves[from..to), splitting each group of leaves
+  // in half across the longer side of the box around their centers, and
+  // returns its root.
+  private int build(int[] leaves, int from, int to) {
+    if (to - from == 1) {
+      return leaves[from];
+    }
+
+    double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+    double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+    for (int i = from; i < to; i++) {
+      int leaf = leaves[i];
+      minX = Math.min(minX, left[leaf] + right[leaf]);
+      maxX = Math.max(maxX, left[leaf] + right[leaf]);
+      minY = Math.min(minY, bottom[leaf] + top[leaf]);
+      maxY = Math.max(maxY, bottom[leaf] + top[leaf]);
+    }
+    boolean alongX = maxX - minX >= maxY - minY;
+    int mid = (from + to) >>> 1;
+    select(leaves, from, to - 1, mid, alongX);
+
+    int c1 = build(leaves, from, mid);
+    int c2 = build(leaves, mid, to);
+    int node = allocateNode();
+    shape[node] = null;
+    child1[node] = c1;
+    child2[node] = c2;
+    parent[c1] = node;
+    parent[c2] = node;
+    combine(node, c1, c2);
+    height[node] = 1 + Math.max(height[c1], height[c2]);
+    return node;
+  }
+
+  // Rearranges leaves[lo..hi] so that leaves[k] is the leaf that would be
+  // there if they were sorted by center, with smaller centers before it and
+  // larger ones after.
+  private void select(int[] leaves, int lo, int hi, int k, boolean alongX) {
+    while (lo < hi) {
+      double pivot = center(leaves[(lo + hi) >>> 1], alongX);
+      int i = lo;
+      int j = hi;
+      while (i <= j) {
+        while (center(leaves[i], alongX) < pivot) i++;
+        while (center(leaves[j], alongX) > pivot) j--;
+        if (i <= j) {
+          int swap = leaves[i];
+          leaves[i] = leaves[j];
+          leaves[j] = swap;
+          i++;
+          j--;
+        }
+      }
+      if (k <= j) {
+        hi = j;
+      } else if (k >= i) {
+        lo = i;
+      } else {
+        return;
+      }
+    }
+  }
+
+  // twice the node's center along one axis
+  private double center(int node, boolean alongX) {
+    return alongX ? left[node] + right[node] : bottom[node] + top[node];
+  }
+
+  private double descentCost(int child, int leaf) {
+    if (isLeaf(child)) {
+      return combinedPerimeter(child, leaf);
+    }
+    return combinedPerimeter(child, leaf) - perimeter(child);
+  }
+
+  private double perimeter(int node) {
+    return 2.0 * ((right[node] - left[node]) + (top[node] - bottom[node]));
+  }
+
+  private double combinedPerimeter(int s, int t) {
+    double dx = Math.max(right[s], right[t]) - Math.min(left[s], left[t]);
+    double dy = Math.max(top[s], top[t]) - Math.min(bottom[s], bottom[t]);
+    return 2.0 * (dx + dy);
+  }
+
+  // sets node's box to the union of the boxes of s and t
+  private void combine(int node, int s, int t) {
+    left[node] = Math.min(left[s], left[t]);
+    bottom[node] = Math.min(bottom[s], bottom[t]);
+    right[node] = Math.max(right[s], right[t]);
+    top[node] = Math.max(top[s], top[t]);
+  }
+
+  private int allocateNode() {
+    if (freeList == NULL) {
+      grow(capacity * 2);
+    }
+    int node = freeList;
+    freeList = parent[node];
+    parent[node] = NULL;
+    child1[node] = NULL;
+    child2[node] = NULL;
+    height[node] = 0;
+    return node;
+  }
+
+  private void freeNode(int node) {
+    shape[node] = null;
+    height[node] = -1;
+    parent[node] = freeList;
+    freeList = node;
+  }
+
+  // Makes room for extra more leaves, and the nodes above them.
+  private void reserve(int extra) {
+    int needed = 2 * (leafOf.size() + extra);
+    if (capacity < needed) {
+      grow(needed);
+    }
+  }
+
+  private void grow(int newCapacity) {
+    left = Arrays.copyOf(left == null ? new double[0] : left, newCapacity);
+    bottom =
+      Arrays.copyOf(bottom == null ? new double[0] : bottom, newCapacity);
+    right = Arrays.copyOf(right == null ? new double[0] : right, newCapacity);
+    top = Arrays.copyOf(top == null ? new double[0] : top, newCapacity);
+    parent = Arrays.copyOf(parent == null ? new int[0] : parent, newCapacity);
+    child1 = Arrays.copyOf(child1 == null ? new int[0] : child1, newCapacity);
+    child2 = Arrays.copyOf(child2 == null ? new int[0] : child2, newCapacity);
+    height = Arrays.copyOf(height == null ? new int[0] : height, newCapacity);
+    shape =
+      Arrays.copyOf(shape == null ? new Shape[0] : shape, newCapacity);
+
+    // thread the new nodes onto the free list
+    for (int i = newCapacity - 1; i >= capacity; i--) {
+      height[i] = -1;
+      parent[i] = freeList;
+      freeList = i;
+    }
+    capacity = newCapacity;
+  }
+}
@@ -0,0 +1,71 @@
+package shapes;
+
+import java.awt.*;
+import java.awt.image.*;
+
+// Draws the game straight from the game loop's thread into a BufferStrategy,
+// instead of asking Swing to repaint. Each frame is drawn into a back buffer
+// and then flipped onto the screen, so frames aren't merged or held back by
+// Swing's repaint queue.
+@SuppressWarnings("serial")
+class ActiveCanvas extends java.awt.Canvas implements GameLoop.View {
+  // the screen, plus up to two back buffers
+  private static final int BUFFERS = 3;
+
+  private Thread animator;
+  private Game game;
+  private World world;
+  private final LayerCache layerCache = new LayerCache();
+
+  ActiveCanvas(Game game, Mouse mouse, Keyboard keyboard) {
+    super();
+
+    this.game = game;
+    this.world = game.getWorld();
+
+    // this canvas draws itself; it doesn't wait to be asked
+    setIgnoreRepaint(true);
+    setPreferredSize(new Dimension(Game.WIDTH, Game.HEIGHT));
+    setSize(Game.WIDTH, Game.HEIGHT);
+
+    // the window doesn't see events that happen over a heavyweight canvas
+    addMouseMotionListener(mouse);
+    addMouseListener(mouse);
+    addKeyListener(keyboard);
+  }
+
+  public void show(Snapshot snapshot) {
+    BufferStrategy strategy = getBufferStrategy();
+    FrameStats stats = world.frameStats;
+
+    // the buffers' contents can be lost at any time (when the window is
+    // minimized, say), in which case the frame is drawn again
+    do {
+      do {
+        long start = System.nanoTime();
+        Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
+        snapshot.render(
+          g,
+          GameLoop.tickProgress(snapshot, world),
+          stats,
+          layerCache
+        );
+        g.dispose();
+        stats.record(FrameStats.Phase.PAINT, System.nanoTime() - start);
+      } while (strategy.contentsRestored());
+
+      long start = System.nanoTime();
+      strategy.show();
+      Toolkit.getDefaultToolkit().sync();
+      stats.record(FrameStats.Phase.PRESENT, System.nanoTime() - start);
+    } while (strategy.contentsLost());
+  }
+
+  public void addNotify() {
+    super.addNotify();
+    // a buffer strategy can only be made once the canvas is on screen
+    createBufferStrategy(BUFFERS);
+    animator = new Thread(new GameLoop(game, this));
+    animator.start();
+  }
+}
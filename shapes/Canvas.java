@@ -3,44 +3,76 @@ package shapes;
 import java.awt.*;
 import javax.swing.*;
 
-class Canvas extends JPanel implements Runnable {
+// Draws the game with Swing: the game loop hands over each snapshot and asks
+// for a repaint, and Swing paints it on its own thread. Only the part of the
+// canvas that changed since the last snapshot is repainted.
+class Canvas extends JPanel implements GameLoop.View {
 
   private Thread animator;
   private Game game;
+  private World world;
+  private final LayerCache layerCache = new LayerCache();
 
-  private final int DELAY = 20; // nate: FPS should be a global constant
+  // the game as of the most recent tick. The game loop replaces it after
+  // running ticks, and painting only ever reads it.
+  private volatile Snapshot snapshot;
+  // the snapshot shown before, which only the game loop uses
+  private Snapshot shown;
 
   Canvas(Game game) {
     super();
 
     this.game = game;
+    this.world = game.getWorld();
 
     setDoubleBuffered(true);
     setPreferredSize(new Dimension(game.WIDTH, game.HEIGHT));
     setSize(game.WIDTH, game.HEIGHT);
   }
 
+  // Shows view in a new window, listening to the mouse and keyboard.
+  static void openWindow(Component view, Mouse mouse, Keyboard keyboard) {
+    JFrame frame = new JFrame();
+    frame.addMouseMotionListener(mouse);
+    frame.addMouseListener(mouse);
+    frame.addKeyListener(keyboard);
+    frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+    frame.add(view);
+    frame.pack();
+    frame.setLocationRelativeTo(null);
+    frame.setResizable(false);
+    frame.setVisible(true);
+    view.requestFocusInWindow();
+  }
+
+  public void show(Snapshot snapshot) {
+    java.awt.Rectangle changed =
+      snapshot.changedSince(shown, this::getFontMetrics);
+    shown = snapshot;
+    this.snapshot = snapshot;
+    if (changed == null) {
+      repaint();
+    } else if (!changed.isEmpty()) {
+      repaint(changed);
+    }
+  }
+
   public void paint(Graphics g0) {
     super.paint(g0);
 
     Graphics2D g = (Graphics2D)g0;
 
-    if (game.hasTitle()) {
-      game.renderTitle(g);
-    } else {
-      for (Integer layer : game.getLayers()) {
-        for (Shape s : game.getLayerContents(layer)) {
-          if (!s.isDestroyed()) {
-            s.render(g);
-          } else {
-            game.getLayerContents(layer).remove(s);
-          }
-        }
-      }
-      game.renderCounters(g);
-      if (game.hasSubtitle()) {
-        game.renderSubtitle(g);
-      }
+    Snapshot snapshot = this.snapshot;
+    if (snapshot != null) {
+      long start = System.nanoTime();
+      FrameStats stats = world.frameStats;
+      snapshot.render(
+        g,
+        GameLoop.tickProgress(snapshot, world),
+        stats,
+        layerCache
+      );
+      stats.record(FrameStats.Phase.PAINT, System.nanoTime() - start);
     }
 
     Toolkit.getDefaultToolkit().sync();
@@ -49,53 +81,7 @@ class Canvas extends JPanel implements Runnable {
 
   public void addNotify() {
     super.addNotify();
-    animator = new Thread(this);
+    animator = new Thread(new GameLoop(game, this));
     animator.start();
   }
-
-  public void run() {
-    long beforeTime, timeDiff, sleep;
-
-    beforeTime = System.currentTimeMillis();
-
-    while (true) {
-
-      game.autoUpdate();
-      if (!game.hasTitle()) {
-        game.update();
-      }
-      repaint();
-
-      timeDiff = System.currentTimeMillis() - beforeTime;
-      sleep = DELAY - timeDiff;
-
-      if (sleep < 0)
-        sleep = 2;
-      try {
-        Thread.sleep(sleep);
-      } catch (InterruptedException e) {
-        System.out.println("interrupted");
-      }
-
-      beforeTime = System.currentTimeMillis();
-    }
-  }
-
-  public Point[] getCorners() {
-    return new Point[] {
-      new Point(0, game.HEIGHT),
-      new Point(game.WIDTH, game.HEIGHT),
-      new Point(game.WIDTH, 0),
-      new Point(0, 0)
-    };
-  }
-
-  Segment[] getBorders() {
-    return new Segment[] {
-      Game.Border.TOP.getSegment(),
-      Game.Border.RIGHT.getSegment(),
-      Game.Border.BOTTOM.getSegment(),
-      Game.Border.LEFT.getSegment()
-    };
-  }
 }
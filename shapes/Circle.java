@@ -54,7 +54,7 @@ public class Circle extends Shape {
       return distance + c.getRadius() < this.getRadius();
     } else if (s instanceof ConvexPolygon) {
       ConvexPolygon poly = (ConvexPolygon) s;
-      for (Point corner : poly.getCorners()) {
+      for (Point corner : poly.corners()) {
         if (!this.contains(corner)) {
           return false;
         }
@@ -65,36 +65,19 @@ public class Circle extends Shape {
     }
   }
 
-  void render(Graphics2D g) {
-    renderSpeech(g);
-    if (isInvisible()) {
-      return;
-    }
-    g.setColor(getColor());
-    if (isFilled()) {
-      g.fillOval((int)(getCenter().getCanvasX() - radius),
-                 (int)(getCenter().getCanvasY() - radius),
-                 (int)(radius * 2),
-                 (int)(radius * 2));
-    } else {
-      g.drawOval((int)(getCenter().getCanvasX() - radius),
-                 (int)(getCenter().getCanvasY() - radius),
-                 (int)(radius * 2),
-                 (int)(radius * 2));
-    }
+  Snapshot.Sprite sprite() {
+    return new Snapshot.CircleSprite(this);
   }
 
   Point maxMovement(Point target, Segment obstacle) {
-    Segment path = new Segment(getCenter(), target);
     Point maxMove = Geometry.maxMovement(this, target, obstacle);
-    maxMove = Geometry.insertGap(this, path, maxMove);
+    maxMove = Geometry.insertGap(this, target, maxMove);
     return maxMove;
   }
 
   Point maxMovement(Point target, Shape obstacle) {
-    Segment path = new Segment(getCenter(), target);
     Point maxMove = Geometry.maxMovement(this, target, obstacle);
-    maxMove = Geometry.insertGap(this, path, maxMove);
+    maxMove = Geometry.insertGap(this, target, maxMove);
     return maxMove;
   }
 
@@ -142,6 +125,14 @@ public class Circle extends Shape {
     return getCenter().getY() - getRadius();
   }
 
+  double maxRadius() {
+    return getRadius();
+  }
+
+  double minExtent() {
+    return 2 * getRadius();
+  }
+
   /**
    * Returns the length of this circle's radius.
    *
@@ -163,6 +154,7 @@ public class Circle extends Shape {
       throw new IllegalArgumentException("Radius must be positive.");
     }
     this.radius = radius;
+    sizeChanged();
   }
 
   @Override
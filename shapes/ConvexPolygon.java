@@ -10,7 +10,22 @@ import java.awt.*;
 abstract class ConvexPolygon extends Shape {
 
   private boolean displaysRotation;
-  abstract Point[] getUnrotatedCorners();
+
+  // World-space geometry, recomputed only after this polygon moves, turns or
+  // changes size. The center's coordinates are remembered too, since the
+  // Point returned by getCenter() can be changed directly.
+  private boolean geometryDirty = true;
+  private double cachedCenterX, cachedCenterY;
+  private Point[] corners;
+  private double[] cornerX, cornerY;
+  private Segment[] sides;
+  private double[] normalX, normalY;
+  private double left, bottom, right, top;
+  private double maxRadius;
+
+  // Returns the corners' offsets from the center when facing right, as
+  // {x0, y0, x1, y1, ...}.
+  abstract double[] getCornerOffsets();
 
   public ConvexPolygon() {
     super();
@@ -19,6 +34,82 @@ abstract class ConvexPolygon extends Shape {
     setDisplaysRotation(true);
   }
 
+  @Override
+  void boundsChanged() {
+    geometryDirty = true;
+    super.boundsChanged();
+  }
+
+  private void updateGeometry() {
+    Point center = getCenter();
+    if (
+      !geometryDirty &&
+      center.getX() == cachedCenterX &&
+      center.getY() == cachedCenterY
+    ) {
+      return;
+    }
+
+    double[] offsets = getCornerOffsets();
+    int n = offsets.length / 2;
+    double cos = 1.0;
+    double sin = 0.0;
+    if (
+      displaysRotation &&
+      getDirection() != null &&
+      Math.abs(getDirection().toRadians()) >= Geometry.EPSILON
+    ) {
+      double angle = getDirection().toRadians();
+      cos = Math.cos(angle);
+      sin = Math.sin(angle);
+    }
+
+    corners = new Point[n];
+    cornerX = new double[n];
+    cornerY = new double[n];
+    left = bottom = Double.POSITIVE_INFINITY;
+    right = top = Double.NEGATIVE_INFINITY;
+    maxRadius = 0;
+    for (int i = 0; i < n; i++) {
+      double xOffset = offsets[2 * i];
+      double yOffset = offsets[2 * i + 1];
+      cornerX[i] = center.getX() + xOffset * cos - yOffset * sin;
+      cornerY[i] = center.getY() + xOffset * sin + yOffset * cos;
+      corners[i] = new Point(cornerX[i], cornerY[i]);
+      left = Math.min(left, cornerX[i]);
+      right = Math.max(right, cornerX[i]);
+      bottom = Math.min(bottom, cornerY[i]);
+      top = Math.max(top, cornerY[i]);
+      maxRadius = Math.max(maxRadius, Geometry.hypoteneuse(xOffset, yOffset));
+    }
+
+    sides = new Segment[n];
+    normalX = new double[n];
+    normalY = new double[n];
+    for (int i = 0; i < n; i++) {
+      int j = (i + 1) % n;
+      sides[i] = new Segment(corners[i], corners[j]);
+
+      // unit normal, flipped if necessary to point away from the center
+      double dx = cornerX[j] - cornerX[i];
+      double dy = cornerY[j] - cornerY[i];
+      double length = Geometry.hypoteneuse(dx, dy);
+      double nx = length < Geometry.EPSILON ? 0 : dy / length;
+      double ny = length < Geometry.EPSILON ? 0 : -dx / length;
+      if (nx * (cornerX[i] - center.getX()) +
+          ny * (cornerY[i] - center.getY()) < 0) {
+        nx = -nx;
+        ny = -ny;
+      }
+      normalX[i] = nx;
+      normalY[i] = ny;
+    }
+
+    cachedCenterX = center.getX();
+    cachedCenterY = center.getY();
+    geometryDirty = false;
+  }
+
   /**
    * Returns the location of the corners of this shape.
    *
@@ -26,62 +117,85 @@ abstract class ConvexPolygon extends Shape {
    *          vertex of this polygon.
    */
   public Point[] getCorners() {
-    Point[] corners = getUnrotatedCorners();
-    if (
-      !displaysRotation ||
-      getDirection() == null ||
-      Math.abs(getDirection().toRadians()) < Geometry.EPSILON
-    ) {
-      return corners;
-    }
-
-    double angle = getDirection().toRadians();
-    for (int i = 0; i < corners.length; i++) {
-      double xOffset = corners[i].getX() - getCenter().getX();
-      double yOffset = corners[i].getY() - getCenter().getY();
-      corners[i] = new Point(
-        getCenter().getX() + xOffset * Math.cos(angle) - yOffset * Math.sin(angle),
-        getCenter().getY() + xOffset * Math.sin(angle) + yOffset * Math.cos(angle)
-      );
+    Point[] copy = new Point[corners().length];
+    for (int i = 0; i < copy.length; i++) {
+      copy[i] = new Point(cornerX[i], cornerY[i]);
     }
+    return copy;
+  }
 
+  // The cached corners. Callers must not modify the array or its points.
+  Point[] corners() {
+    updateGeometry();
     return corners;
   }
 
+  double[] cornerXs() {
+    updateGeometry();
+    return cornerX;
+  }
+
+  double[] cornerYs() {
+    updateGeometry();
+    return cornerY;
+  }
+
+  // outward unit normal of each side; normal i belongs to side i, which runs
+  // from corner i to corner i + 1
+  double[] normalXs() {
+    updateGeometry();
+    return normalX;
+  }
+
+  double[] normalYs() {
+    updateGeometry();
+    return normalY;
+  }
+
   double maxRadius() {
-    double max = 0;
-    for (Point corner : getCorners()) {
-      max = Math.max(max, getCenter().distanceTo(corner));
+    updateGeometry();
+    return maxRadius;
+  }
+
+  // the narrowest the polygon gets, measured across each of its sides
+  double minExtent() {
+    updateGeometry();
+    double extent = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < cornerX.length; i++) {
+      double side = normalX[i] * cornerX[i] + normalY[i] * cornerY[i];
+      double width = 0;
+      for (int j = 0; j < cornerX.length; j++) {
+        width = Math.max(
+          width,
+          side - (normalX[i] * cornerX[j] + normalY[i] * cornerY[j])
+        );
+      }
+      extent = Math.min(extent, width);
     }
-    return max;
+    return extent;
   }
 
+  // The cached sides. Callers must not modify the array.
   Segment[] getSides() {
-    Point[] corners = getCorners();
-    Segment[] sides = new Segment[corners.length];
-    for (int i = 0; i < corners.length; i++) {
-      sides[i] = new Segment(corners[i], corners[(i + 1) % corners.length]);
-    }
+    updateGeometry();
     return sides;
   }
 
   Point maxMovement(Point target, Segment obstacle) {
-    Segment path = new Segment(getCenter(), target);
     Point maxMove = Geometry.maxMovement(this, target, obstacle);
-    maxMove = Geometry.insertGap(this, path, maxMove);
+    maxMove = Geometry.insertGap(this, target, maxMove);
     return maxMove;
   }
 
   Point maxMovement(Point target, Shape obstacle) {
-    Segment path = new Segment(getCenter(), target);
     Point maxMove = Geometry.maxMovement(this, target, obstacle);
-    maxMove = Geometry.insertGap(this, path, maxMove);
+    maxMove = Geometry.insertGap(this, target, maxMove);
     return maxMove;
   }
 
   public boolean isOffscreen() {
     // nate: corner case is handled incorrectly!
-    for (Point corner : getCorners()) {
+    for (Point corner : corners()) {
       if (!Geometry.offscreen(corner)) {
         return false;
       }
@@ -94,7 +208,7 @@ abstract class ConvexPolygon extends Shape {
       return false;
     }
     if (shape instanceof ConvexPolygon) {
-      Point[] corners = ((ConvexPolygon) shape).getCorners();
+      Point[] corners = ((ConvexPolygon) shape).corners();
       for (Point corner : corners) {
         if (!this.contains(corner)) {
           return false;
@@ -107,8 +221,7 @@ abstract class ConvexPolygon extends Shape {
         return false;
       }
       for (Segment side : getSides()) {
-        double distance =
-          Geometry.perpendicularThrough(side, circle.getCenter()).length();
+        double distance = Geometry.lineDistance(side, circle.getCenter());
         if (distance < circle.getRadius()) {
           return false;
         }
@@ -122,71 +235,27 @@ abstract class ConvexPolygon extends Shape {
     if (p == null) {
       return false;
     }
-    // the point is inside if all cross products have the same sign
-    boolean positive = false;
-    boolean first = true;
-    for (Segment side : getSides()) {
-      boolean pos =
-        Geometry.cross(side.vector(), new Vector(side.getStart(), p)) > 0;
-      if (first) {
-        positive = pos;
-        first = false;
-        continue;
-      }
-      if (pos != positive) {
-        return false;
-      }
-    }
-    return true;
+    return Kernel.polygonContains(cornerXs(), cornerYs(), p.getX(), p.getY());
   }
 
-  void render(Graphics2D g) {
-    renderSpeech(g);
-    if (this.isInvisible()) {
-      return;
-    }
-
-    g.setColor(getColor());
-    Point[] corners = getCorners();
-    int[] x = new int[corners.length];
-    int[] y = new int[corners.length];
-    for (int i = 0; i < corners.length; i++) {
-      x[i] = (int)corners[i].getCanvasX();
-      y[i] = (int)corners[i].getCanvasY();
-    }
-    if (this.isFilled()) {
-      g.fillPolygon(x, y, corners.length);
-    } else {
-      g.drawPolygon(x, y, corners.length);
-    }
+  Snapshot.Sprite sprite() {
+    return new Snapshot.PolygonSprite(this);
   }
 
   public double getRight() {
-    double right = Double.NEGATIVE_INFINITY;
-    for (Point corner : getCorners()) {
-      right = Math.max(right, corner.getX());
-    }
+    updateGeometry();
     return right;
   }
   public double getTop() {
-    double top = Double.NEGATIVE_INFINITY;
-    for (Point corner : getCorners()) {
-      top = Math.max(top, corner.getY());
-    }
+    updateGeometry();
     return top;
   }
   public double getLeft() {
-    double left = Double.POSITIVE_INFINITY;
-    for (Point corner : getCorners()) {
-      left = Math.min(left, corner.getX());
-    }
+    updateGeometry();
     return left;
   }
   public double getBottom() {
-    double bottom = Double.POSITIVE_INFINITY;
-    for (Point corner : getCorners()) {
-      bottom = Math.min(bottom, corner.getY());
-    }
+    updateGeometry();
     return bottom;
   }
 
@@ -201,6 +270,7 @@ abstract class ConvexPolygon extends Shape {
    */
   public void setDisplaysRotation(boolean displaysRotation) {
     this.displaysRotation = displaysRotation;
+    boundsChanged();
   }
 
   /**
@@ -12,6 +12,8 @@ public class Counter {
   private String name;
   private int value;
   private boolean destroyed = false;
+  // the world this counter was made in
+  private final World world;
 
   /**
    * Construct a new counter with a given name and value.
@@ -25,7 +27,8 @@ public class Counter {
     }
     this.name = name;
     this.value = initialValue;
-    Game.addCounter(this);
+    world = World.current();
+    world.addCounter(this);
   }
 
   /**
@@ -56,12 +59,11 @@ public class Counter {
   // nate: test whether this works
   public void destroy() {
     destroyed = true;
-    Game.removeCounter(this);
+    world.removeCounter(this);
   }
 
-  static void renderCounters(java.util.List<Counter> counters, TextStyle style, Graphics2D g) {
-    Point windowTopLeft = new Point(0, Game.HEIGHT);
-    Point countersTopLeft = windowTopLeft.translation(new Vector(10, -10));
+  // the text displayed for the given counters, one per line
+  static String describe(java.util.List<Counter> counters) {
     StringBuffer buf = new StringBuffer();
     Iterator<Counter> iter = counters.iterator();
     while (iter.hasNext()) {
@@ -70,15 +72,37 @@ public class Counter {
         buf.append('\n');
       }
     }
+    return buf.toString();
+  }
+
+  private static final Point COUNTERS_TOP_LEFT =
+    new Point(0, Game.HEIGHT).translation(new Vector(10, -10));
+
+  static void renderCounters(String text, TextStyle style, Graphics2D g) {
     style.renderString(
-      buf.toString(),
-      countersTopLeft,
+      text,
+      COUNTERS_TOP_LEFT,
       TextStyle.ReferencePointLocation.TOP_LEFT,
       g,
       null
     );
   }
 
+  // The part of the canvas renderCounters() draws on.
+  static java.awt.Rectangle countersArea(
+    String text,
+    TextStyle style,
+    java.util.function.Function<Font, FontMetrics> metrics
+  ) {
+    return style.area(
+      text,
+      COUNTERS_TOP_LEFT,
+      TextStyle.ReferencePointLocation.TOP_LEFT,
+      metrics.apply(style.getFont()),
+      null
+    );
+  }
+
   /* Getters and settings*/
 
   /**
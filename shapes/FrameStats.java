@@ -0,0 +1,199 @@
+package shapes;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Measures how long each part of a frame takes, so you can see what is
+ * making your game slow. Get the game's stats with
+ * {@link Game#getFrameStats()}, or show them on screen with
+ * {@link Game#setShowsFrameStats(boolean)}.
+ * <p>
+ * The stats cover the most recent frames only, so they keep up as your game
+ * changes. For each part of the frame you can get the median time, the time
+ * that 99% of frames beat, and the longest time.
+ * <p>
+ * <strong>Example usage:</strong>
+ * <p>
+ * <code>
+ *  FrameStats stats = Game.getFrameStats();<br />
+ *  System.out.println(stats.getMax(FrameStats.Phase.UPDATE));
+ * </code>
+ */
+public class FrameStats {
+  /**
+   * The parts of a frame that are measured. Values are:
+   * <ul>
+   *  <li><code>AUTO_UPDATE</code>: moving shapes according to their speed.
+   *  </li>
+   *  <li><code>UPDATE</code>: your game's <code>update()</code> method and
+   *  each shape's <code>update()</code> method.</li>
+   *  <li><code>COLLISION</code>: checking which shapes touch or block each
+   *  other. This time is also part of <code>AUTO_UPDATE</code> and
+   *  <code>UPDATE</code>.</li>
+   *  <li><code>PAINT</code>: drawing the whole frame.</li>
+   *  <li><code>PRESENT</code>: putting a drawn frame on the screen. Only
+   *  measured with active rendering (see
+   *  {@link Game#setActiveRendering(boolean)}).</li>
+   *  <li><code>LAYERS</code>: drawing the shapes, part of
+   *  <code>PAINT</code>.</li>
+   *  <li><code>TEXT</code>: drawing titles, counters and speech, part of
+   *  <code>PAINT</code>.</li>
+   * </ul>
+   */
+  public enum Phase {
+    AUTO_UPDATE, UPDATE, COLLISION, PAINT, PRESENT, LAYERS, TEXT
+  };
+
+  // how many frames the stats cover
+  private static final int WINDOW = 256;
+
+  // a ring buffer of the most recent times for each phase, in nanoseconds
+  private final long[][] samples = new long[Phase.values().length][WINDOW];
+  private final long[] counts = new long[Phase.values().length];
+  // collision time so far this frame, which can come from several threads
+  private final LongAdder collision = new LongAdder();
+  // how many shapes the most recently painted frame drew, and how many it
+  // skipped for being off the canvas
+  private int drawnShapes;
+  private int culledShapes;
+
+  FrameStats() {
+  }
+
+  synchronized void record(Phase phase, long nanos) {
+    int p = phase.ordinal();
+    samples[p][(int) (counts[p] % WINDOW)] = nanos;
+    counts[p]++;
+  }
+
+  synchronized void recordShapes(int drawn, int culled) {
+    drawnShapes = drawn;
+    culledShapes = culled;
+  }
+
+  void addCollisionTime(long nanos) {
+    collision.add(nanos);
+  }
+
+  // Records the collision time added since the last call as one frame's.
+  void recordCollision() {
+    record(Phase.COLLISION, collision.sumThenReset());
+  }
+
+  // the recent times for a phase, sorted
+  private synchronized long[] sorted(Phase phase) {
+    int p = phase.ordinal();
+    long[] times =
+      Arrays.copyOf(samples[p], (int) Math.min(counts[p], WINDOW));
+    Arrays.sort(times);
+    return times;
+  }
+
+  private static double percentile(long[] sorted, double fraction) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int rank = (int) Math.ceil(fraction * sorted.length) - 1;
+    return sorted[Math.max(rank, 0)] / 1e6;
+  }
+
+  /**
+   * Returns the median time a part of the frame took over the most recent
+   * frames.
+   *
+   * @param phase the part of the frame.
+   * @return      the median time, in milliseconds, or 0 if nothing has been
+   *              measured yet.
+   */
+  public double getMedian(Phase phase) {
+    return percentile(sorted(phase), 0.5);
+  }
+
+  /**
+   * Returns the time that a part of the frame took less than (or as much
+   * as) in 99% of the most recent frames.
+   *
+   * @param phase the part of the frame.
+   * @return      the 99th percentile time, in milliseconds, or 0 if nothing
+   *              has been measured yet.
+   */
+  public double getPercentile99(Phase phase) {
+    return percentile(sorted(phase), 0.99);
+  }
+
+  /**
+   * Returns the longest time a part of the frame took over the most recent
+   * frames.
+   *
+   * @param phase the part of the frame.
+   * @return      the longest time, in milliseconds, or 0 if nothing has
+   *              been measured yet.
+   */
+  public double getMax(Phase phase) {
+    return percentile(sorted(phase), 1.0);
+  }
+
+  /**
+   * Returns how many frames the stats for a part of the frame cover.
+   *
+   * @param phase the part of the frame.
+   * @return      the number of recent frames measured.
+   */
+  public synchronized int getFrameCount(Phase phase) {
+    return (int) Math.min(counts[phase.ordinal()], WINDOW);
+  }
+
+  /**
+   * Returns how many shapes were drawn in the most recently painted frame.
+   * Shapes in a cached layer (see {@link Game#setLayerCached}) count as
+   * drawn.
+   *
+   * @return  the number of shapes drawn.
+   * @see     #getCulledShapes
+   */
+  public synchronized int getDrawnShapes() {
+    return drawnShapes;
+  }
+
+  /**
+   * Returns how many shapes were skipped in the most recently painted frame
+   * because they, and their speech, were entirely outside the game window.
+   *
+   * @return  the number of shapes skipped.
+   * @see     #getDrawnShapes
+   */
+  public synchronized int getCulledShapes() {
+    return culledShapes;
+  }
+
+  /**
+   * Returns a table of the stats, one line per part of the frame, with
+   * times in milliseconds, followed by how many shapes the most recently
+   * painted frame drew and skipped.
+   *
+   * @return  a string describing the stats.
+   */
+  @Override
+  public String toString() {
+    StringBuffer buf = new StringBuffer(
+      String.format("%-11s %6s %6s %6s", "phase", "p50", "p99", "max")
+    );
+    for (Phase phase : Phase.values()) {
+      long[] times = sorted(phase);
+      buf.append(String.format(
+        "\n%-11s %6.2f %6.2f %6.2f",
+        phase.name().toLowerCase(),
+        percentile(times, 0.5),
+        percentile(times, 0.99),
+        percentile(times, 1.0)
+      ));
+    }
+    buf.append(String.format(
+      "\nshapes drawn %d, culled %d",
+      getDrawnShapes(),
+      getCulledShapes()
+    ));
+    return buf.toString();
+  }
+}
@@ -1,12 +1,11 @@
 package shapes;
 
 import java.awt.*;
-import java.applet.*;
 import java.awt.geom.*;
 import java.*;
-import javax.swing.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.*;
 import java.lang.*;
 
 /**
@@ -25,28 +24,20 @@ import java.lang.*;
  * methods before: if you see a method named <code>xx</code> listed as
  * <code>static</code> below, then you can call it with
  * <code>Game.xx()</code>.)
+ * <p>
+ * Each game has its own shapes, counters and settings, so one program can
+ * run several games side by side (headless ones, for example; see
+ * {@link #setHeadless}). The static methods act on the game that was created
+ * on, or is running on, the calling thread, and a shape belongs to the game
+ * it was created in. On any other thread they act on the first game
+ * created.
  */
-public abstract class Game extends Applet {
-  private static JFrame frame;
-  private static Canvas canvas;
-  private static boolean applet;
-  private static Set<Shape> solidShapes;
-  private static Set<Shape> allShapes;
-
-  private static java.util.List<Counter> counters;
-  private static TextStyle counterStyle;
-
-  private static Map<Integer, java.util.List<Shape>> layerContents;
-  private static java.util.List<Integer> layers;
-  private static Map<Shape, Integer> layerOf;
-
-  private static String title;
-  private static TextStyle titleStyle;
-  private static int titleDuration;
-
-  private static String subtitle;
-  private static TextStyle subtitleStyle;
-  private static int subtitleDuration;
+public abstract class Game {
+  private static boolean activeRendering;
+  private static volatile boolean batchedDrawing;
+  private static boolean headless = Boolean.getBoolean("java.awt.headless");
+  // this game's shapes, settings and so on
+  private final World world;
 
   /**
    * Represents the ways in which shapes can react to reaching the edge of the
@@ -64,7 +55,6 @@ public abstract class Game extends Applet {
    * </code>
    */
   public enum BorderBehavior { NONE, SOLID, BOUNCE };
-  private static BorderBehavior borderBehavior;
 
   /**
    * The height of the game window in pixels.
@@ -80,73 +70,191 @@ public abstract class Game extends Applet {
    *
    * @param web <code>true</code> if this game is meant to be an applet (which
    *            can be played online), and <code>false</code> otherwise. Note:
-   *            this doesn't work yet.
+   *            this doesn't work yet, and is ignored.
    */
   public Game(boolean web) {
-    this.applet = web;
-    canvas = new Canvas(this);
-    solidShapes =
-      Collections.newSetFromMap(new ConcurrentHashMap<Shape, Boolean>());
-    allShapes = 
-      Collections.newSetFromMap(new ConcurrentHashMap<Shape, Boolean>());
-
-    // TODO: sort out which data structures actually have to support concurrency
-    layerContents = new ConcurrentHashMap<Integer, java.util.List<Shape>>();
-    layers = new CopyOnWriteArrayList<Integer>();
-    layerOf = new ConcurrentHashMap<Shape, Integer>();
-
-    counters = new ArrayList<Counter>();
-
-    Mouse mouse = new Mouse();
-    if (applet) {
-      addMouseMotionListener(mouse);
-      addMouseListener(mouse);
-      addKeyListener(new Keyboard());
+    world = World.forNewGame();
+    // the shapes this game's subclass makes while it's being set up belong
+    // to this game
+    World.bind(world);
+  }
+
+  // The world this game's shapes and settings belong to.
+  World getWorld() {
+    return world;
+  }
+
+  /**
+   * You can ignore this method. This method gets called by the subclass's
+   * constructor when it has finished initializing, but that call is already
+   * written in <code>MyGame.java</code>. It opens the game window, unless the
+   * game is headless.
+   */
+  protected void ready() {
+    if (headless) {
+      return;
+    }
+    Mouse mouse = world.mouse;
+    Keyboard keyboard = world.keyboard;
+    if (activeRendering) {
+      ActiveCanvas view = new ActiveCanvas(this, mouse, keyboard);
+      Canvas.openWindow(view, mouse, keyboard);
     } else {
-      frame = new JFrame();
-      frame.addMouseMotionListener(mouse);
-      frame.addMouseListener(mouse);
-      frame.addKeyListener(new Keyboard());
-      frame.setDefaultCloseOperation(frame.EXIT_ON_CLOSE);
+      Canvas.openWindow(new Canvas(this), mouse, keyboard);
     }
+  }
+
+  /**
+   * Set whether the game window draws frames itself, as soon as they are
+   * ready, instead of asking Swing to draw them. This can make motion
+   * smoother and make the game respond to the keyboard and mouse a little
+   * sooner. It's off by default.
+   * <p>
+   * Call this before creating your game.
+   *
+   * @param activeRendering true to draw frames as soon as they're ready,
+   *                        false to let Swing draw them.
+   */
+  public static void setActiveRendering(boolean activeRendering) {
+    Game.activeRendering = activeRendering;
+  }
 
-    setDefaults();
+  /**
+   * Returns whether the game window draws frames itself.
+   *
+   * @return  true if frames are drawn as soon as they're ready, false if
+   *          Swing draws them.
+   * @see     #setActiveRendering(boolean)
+   */
+  public static boolean usesActiveRendering() {
+    return activeRendering;
   }
 
-  private void setDefaults() {
-    setBackgroundColor(Color.BLUE);
-    setBorderBehavior(BorderBehavior.NONE);
+  /**
+   * Set whether shapes of the same color are drawn together. When this is
+   * on, each run of shapes in a layer that have the same color and are all
+   * filled (or all outlined) is drawn in one go, which is much faster when
+   * there are lots of similar shapes, like a swarm of enemies or a spray of
+   * bullets. Shapes are still drawn in the same order, but the edges of
+   * polygons can come out a pixel different. It's off by default.
+   * <p>
+   * <strong>Example usage:</strong>
+   * <p>
+   * <code>
+   *  Game.setBatchedDrawing(true);
+   * </code>
+   *
+   * @param batchedDrawing  true to draw runs of same-colored shapes
+   *                        together, false to draw every shape separately.
+   */
+  public static void setBatchedDrawing(boolean batchedDrawing) {
+    Game.batchedDrawing = batchedDrawing;
+  }
 
-    TextStyle titleStyle = TextStyle.sansSerif();
-    titleStyle.setFontSize(40);
-    setTitleStyle(titleStyle);
-    setCounterStyle(TextStyle.sansSerif());
-    setSubtitleStyle(TextStyle.sansSerif());
+  /**
+   * Returns whether shapes of the same color are drawn together.
+   *
+   * @return  true if runs of same-colored shapes are drawn together.
+   * @see     #setBatchedDrawing(boolean)
+   */
+  public static boolean usesBatchedDrawing() {
+    return batchedDrawing;
   }
 
   /**
-   * You can ignore this method. This method is used internally to initialize
-   * this game as an applet.
+   * Set whether games run headless, that is, without a window. A headless
+   * game doesn't draw anything or respond to the mouse and keyboard. Instead,
+   * you run it yourself with {@link #runHeadless(int)} or
+   * {@link #runHeadlessUntil}, as fast as the computer can go. This is useful
+   * for testing a game automatically.
+   * <p>
+   * Call this before creating your game. Games are headless by default if
+   * Java was started with <code>-Djava.awt.headless=true</code>.
+   *
+   * @param headless  true to run games without a window, false to open a
+   *                  window.
    */
-  public void init() {
-    ready();
+  public static void setHeadless(boolean headless) {
+    Game.headless = headless;
   }
-  
+
   /**
-   * You can ignore this method. This method gets called by the subclass's
-   * constructor when it has finished initializing, but that call is already
-   * written in <code>MyGame.java</code>.
+   * Returns whether games run without a window.
+   *
+   * @return  true if games are headless, false if they open a window.
+   * @see     #setHeadless(boolean)
    */
-  protected void ready() {
-    if (applet) {
-      add(canvas);
-    } else {
-      frame.add(canvas);
-      frame.pack();
-      frame.setLocationRelativeTo(null);
-      frame.setResizable(false);
-      frame.setVisible(true);
+  public static boolean isHeadless() {
+    return headless;
+  }
+
+  /**
+   * Runs this headless game for a given number of frames, as fast as
+   * possible.
+   *
+   * @param ticks the number of frames to run.
+   * @return      the number of frames run.
+   * @see         #setHeadless(boolean)
+   * @see         #getTicksPerSecond
+   */
+  public int runHeadless(int ticks) {
+    if (ticks < 0) {
+      throw new IllegalArgumentException("ticks must not be negative.");
     }
+    return runHeadlessUntil(null, ticks);
+  }
+
+  /**
+   * Runs this headless game, as fast as possible, until a condition holds
+   * or a given number of frames have run. The condition is checked before
+   * each frame.
+   * <p>
+   * <strong>Example usage:</strong>
+   * <p>
+   * <code>
+   *  game.runHeadlessUntil(() -&gt; player.isDestroyed(), 10000);
+   * </code>
+   *
+   * @param done      returns true when the game should stop.
+   * @param maxTicks  the most frames to run.
+   * @return          the number of frames run.
+   * @see             #setHeadless(boolean)
+   * @see             #getTicksPerSecond
+   */
+  public int runHeadlessUntil(BooleanSupplier done, int maxTicks) {
+    if (!headless) {
+      throw new IllegalStateException(
+        "Only headless games can be run this way. See Game.setHeadless."
+      );
+    }
+    if (maxTicks < 0) {
+      throw new IllegalArgumentException("maxTicks must not be negative.");
+    }
+
+    World previous = World.bind(world);
+    try {
+      long start = System.nanoTime();
+      int ticks = 0;
+      while (ticks < maxTicks && (done == null || !done.getAsBoolean())) {
+        tick();
+        ticks++;
+      }
+      long elapsed = System.nanoTime() - start;
+      world.ticksPerSecond = elapsed > 0 ? ticks * 1e9 / elapsed : 0;
+      return ticks;
+    } finally {
+      World.bind(previous);
+    }
+  }
+
+  /**
+   * Returns how fast the most recent headless run went.
+   *
+   * @return  the number of frames per second during the most recent call to
+   *          {@link #runHeadless(int)} or {@link #runHeadlessUntil}.
+   */
+  public static double getTicksPerSecond() {
+    return World.current().ticksPerSecond;
   }
 
   /**
@@ -167,48 +275,70 @@ public abstract class Game extends Applet {
   public void update() {
   }
 
-  void autoUpdate() {
+  // Advances the game by one frame. While a title is showing, the game is
+  // paused and only the title's countdown runs. Called with this game's
+  // world bound to the current thread.
+  void tick() {
+    for (Shape s : world.allShapes) {
+      s.rememberCenter();
+    }
+
     if (hasTitle()) {
+      world.titleDuration--;
       return;
     }
 
-    for (Shape s : allShapes) {
-      s.autoUpdate();
+    world.updateNanos = 0;
+    world.autoUpdate();
+    if (!hasTitle()) {
+      long start = System.nanoTime();
+      update();
+      world.updateNanos += System.nanoTime() - start;
     }
-
-    Iterator<Shape> iter = allShapes.iterator();
-    while (iter.hasNext()) {
-      Shape s = iter.next();
-      s.update();
-      if (s.isDestroyed()) {
-        if (s.isSolid()) {
-          removeSolid(s);
-        }
-        removeFromLayers(s);
-        iter.remove();
-      }
+    world.frameStats.record(FrameStats.Phase.UPDATE, world.updateNanos);
+    world.frameStats.recordCollision();
+    // a duration of -1 means the subtitle stays up until it's changed
+    if (world.subtitleDuration > 0) {
+      world.subtitleDuration--;
     }
+    // close up the gaps left in the layers by this frame's destroyed shapes
+    world.layers.compact();
   }
 
-  static Shape[] getSolids() {
-    return solidShapes.toArray(new Shape[0]);
-  }
-
-  static void addSolid(Shape shape) {
-    solidShapes.add(shape);
-  }
-
-  static void removeSolid(Shape shape) {
-    solidShapes.remove(shape);
-  }
-
-  static void addShape(Shape shape) {
-    allShapes.add(shape);
-  }
-
-  static void removeShape(Shape shape) {
-    allShapes.remove(shape);
-    removeFromLayers(shape);
+  /**
+   * Makes many shapes at once. This is much faster than making them one at
+   * a time in a loop when there are hundreds or thousands of them, such as
+   * a wave of enemies or the tiles of a level.
+   * <p>
+   * <code>factory</code> is called <code>count</code> times, with the
+   * numbers 0, 1, 2 and so on, and should make and return a new shape each
+   * time. The new shapes all join the game together once the last one has
+   * been made. Until then, they aren't in {@link #getAllShapes} and they
+   * can't block each other's movement.
+   * <p>
+   * <strong>Example usage:</strong>
+   * <p>
+   * <code>
+   *  Shape[] tiles = Game.spawnAll(1000, i -&gt;<br />
+   *  &nbsp;&nbsp;new Rectangle(new Point(i % 40 * 20, i / 40 * 20), 20, 20)<br />
+   *  );
+   * </code>
+   *
+   * @param count   how many shapes to make.
+   * @param factory makes the shape with the given number.
+   * @return        the shapes made, in order.
+   */
+  public static Shape[] spawnAll(
+    int count,
+    IntFunction<? extends Shape> factory
+  ) {
+    if (count < 0) {
+      throw new IllegalArgumentException("count must not be negative.");
+    }
+    if (factory == null) {
+      throw new IllegalArgumentException("factory must not be null.");
+    }
+    return World.current().spawnAll(count, factory);
   }
 
   /**
@@ -217,75 +347,99 @@ public abstract class Game extends Applet {
    * @return  an array of all shapes currently in the game.
    */
   public static Shape[] getAllShapes() {
-    return allShapes.toArray(new Shape[0]);
-  }
-
-  static void removeFromLayers(Shape shape) {
-    if (!layerOf.containsKey(shape)) return;
-
-    int oldLayer = layerOf.get(shape);
-    layerContents.get(oldLayer).remove(shape);
-    if (layerContents.get(oldLayer).isEmpty()) {
-      layerContents.remove(oldLayer);
-      layers.remove((Integer) oldLayer);
-    }
-    layerOf.remove(shape);
+    return World.current().allShapes.toArray(new Shape[0]);
   }
 
   /**
-   * Set the layer that a given shape will be displayed in. Since the shapes
-   * in this game are two dimensional, it must be decided which will appear "on
-   * top" when two shapes overlap. The shape in the higher layer will appear
-   * on top.
+   * Returns all shapes that are at least partly inside a rectangular region
+   * of the game window. A shape counts as inside the region if the smallest
+   * box that fits around the shape overlaps the region.
    * <p>
-   * Setting a shape's layer will only affect how it is displayed; a shape's
-   * layer has no effect on how it interacts with other shapes. (For example,
-   * two shapes can touch even if they are in different layers. See
-   * {@link Shape#isTouching(Shape)}.)
-   *
-   * @param shape the shape whose layer is being set.
-   * @param layer the layer into which this shape will be moved.
-   */
-  static void setLayer(Shape shape, int layer) {
-    removeFromLayers(shape);
-
-    // add new stuff
-    if (!layerContents.containsKey(layer)) {
-      layerContents.put(layer, new CopyOnWriteArrayList<Shape>());
-      int insertionPoint = ~Collections.binarySearch(layers, layer);
-      layers.add(insertionPoint, layer);
-    }
-    layerContents.get(layer).add(shape);
-    layerOf.put(shape, layer);
-  }
-
-  static java.util.List<Shape> getLayerContents(int layer) {
-    return layerContents.get(layer);
+   * This is much faster than looping over {@link #getAllShapes} when only
+   * a small part of the window is of interest.
+   *
+   * @param left    the x-coordinate of the region's left edge.
+   * @param bottom  the y-coordinate of the region's bottom edge.
+   * @param right   the x-coordinate of the region's right edge.
+   * @param top     the y-coordinate of the region's top edge.
+   * @return        an array of the shapes in the region.
+   * @see           #shapesTouching
+   */
+  public static Shape[] shapesIn(
+    double left,
+    double bottom,
+    double right,
+    double top
+  ) {
+    return World.current().shapesIn(left, bottom, right, top);
   }
 
   /**
-   * Get the layer that the given shape is in. See {@link #setLayer} for more
-   * information about layers.
+   * Returns all shapes that are touching the given shape. Gives the same
+   * answer as calling {@link Shape#isTouching(Shape)} on every shape in the
+   * game, but only checks shapes that are close to <code>shape</code>.
    *
-   * @param shape the shape whose layer index will be returned.
-   * @return      the index of the layer that <code>shape</code> is contained
-   *              in.
-   * @see         #setLayer
+   * @param shape the shape whose neighbors will be returned.
+   * @return      an array of the shapes touching <code>shape</code>, not
+   *              including <code>shape</code> itself. Returns an empty array
+   *              if <code>shape</code> is <code>null</code>.
+   * @see         #shapesIn
    */
-  static int getLayerOf(Shape shape) {
-    return layerOf.get(shape);
+  public static Shape[] shapesTouching(Shape shape) {
+    if (shape == null || shape.isDestroyed()) {
+      return new Shape[0];
+    }
+    return shape.world.shapesTouching(shape);
   }
 
-  static java.util.List<Integer> getLayers() {
-    return layers;
+  /**
+   * Returns every pair of shapes that are touching each other this frame.
+   * Each element of the returned array is an array of two shapes that are
+   * touching. Each touching pair appears only once, in no particular order.
+   * <p>
+   * The pairs are found once per frame, after all shapes have moved and
+   * before your game's <code>update()</code> method is called. Using this
+   * list is much faster than calling {@link Shape#isTouching(Shape)} on
+   * every combination of shapes yourself.
+   * <p>
+   * <strong>Example usage:</strong>
+   * <p>
+   * <code>
+   *  for (Shape[] pair : Game.getTouchingPairs()) {<br />
+   *  &nbsp;&nbsp;pair[0].say("Ouch!", 20);<br />
+   *  &nbsp;&nbsp;pair[1].say("Ouch!", 20);<br />
+   *  }
+   * </code>
+   *
+   * @return  an array of pairs of touching shapes.
+   * @see     Shape#isTouching(Shape)
+   */
+  public static Shape[][] getTouchingPairs() {
+    return World.current().getTouchingPairs();
   }
 
-  static void addCounter(Counter counter) {
-    counters.add(counter);
+  /**
+   * Returns how many times a moving shape has been checked against a shape
+   * that might be in its way. Useful for measuring how much work collision
+   * checking is doing.
+   *
+   * @return  the number of obstacle checks made since the game began.
+   * @see     #getSkippedMovementChecks
+   */
+  public static long getMovementChecks() {
+    return World.current().movementChecks.sum();
   }
 
-  static void removeCounter(Counter counter) {
-    counters.remove(counter);
+  /**
+   * Returns how many of the checks counted by {@link #getMovementChecks}
+   * were skipped because the obstacle was nowhere near the moving shape's
+   * path.
+   *
+   * @return  the number of obstacle checks skipped since the game began.
+   * @see     #getMovementChecks
+   */
+  public static long getSkippedMovementChecks() {
+    return World.current().skippedMovementChecks.sum();
   }
 
   /**
@@ -299,7 +453,7 @@ public abstract class Game extends Applet {
     if (counterStyle == null) {
       throw new IllegalArgumentException("counterStyle must not be null.");
     }
-    Game.counterStyle = counterStyle;
+    World.current().counterStyle = counterStyle;
   }
 
   /**
@@ -310,7 +464,7 @@ public abstract class Game extends Applet {
    * @see     #setCounterStyle
    */
   public static TextStyle getCounterStyle() {
-    return Game.counterStyle;
+    return World.current().counterStyle;
   }
 
   /**
@@ -320,7 +474,7 @@ public abstract class Game extends Applet {
    * @see     #setBackgroundColor
    */
   public static Color getBackgroundColor() {
-    return canvas.getBackground();
+    return World.current().backgroundColor;
   }
 
   /**
@@ -333,7 +487,50 @@ public abstract class Game extends Applet {
     if (backgroundColor == null) {
       throw new IllegalArgumentException("backgroundColor must not be null.");
     }
-    canvas.setBackground(backgroundColor);
+    World.current().backgroundColor = backgroundColor;
+  }
+
+  /**
+   * Sets whether a layer is cached. A cached layer is drawn once into a
+   * picture, and after that the whole picture is drawn at once, which is much
+   * faster than drawing its shapes one by one. Cache layers whose shapes
+   * hardly ever change, like backgrounds, walls and scenery.
+   * <p>
+   * The picture is drawn again whenever a shape in the layer moves, turns,
+   * changes size, color, fill or visibility, or is destroyed, and whenever a
+   * shape joins or leaves the layer (see {@link Shape#setLayer}). So caching
+   * a layer whose shapes change every frame only makes it slower. While a
+   * shape in the layer is speaking, the layer is drawn normally.
+   * <p>
+   * <strong>Example usage:</strong>
+   * <p>
+   * <code>
+   *  for (int i = 0; i &lt; 300; i++) {<br />
+   *  &nbsp;&nbsp;Rectangle brick = new Rectangle(...);<br />
+   *  &nbsp;&nbsp;brick.setLayer(-1);<br />
+   *  }<br />
+   *  Game.setLayerCached(-1, true);
+   * </code>
+   *
+   * @param layer   the layer's number.
+   * @param cached  true to cache the layer, false to draw its shapes one by
+   *                one every frame.
+   * @see           #isLayerCached
+   */
+  public static void setLayerCached(int layer, boolean cached) {
+    World.current().layers.setCached(layer, cached);
+  }
+
+  /**
+   * Returns whether a layer is cached. Layers aren't cached unless
+   * {@link #setLayerCached} is called.
+   *
+   * @param layer the layer's number.
+   * @return      true if the layer is cached.
+   * @see         #setLayerCached
+   */
+  public static boolean isLayerCached(int layer) {
+    return World.current().layers.isCached(layer);
   }
 
   /**
@@ -342,17 +539,27 @@ public abstract class Game extends Applet {
    * @return  the corners of the window.
    */
   public static Point[] getCorners() {
-    return canvas.getCorners();
+    return new Point[] {
+      new Point(0, HEIGHT),
+      new Point(WIDTH, HEIGHT),
+      new Point(WIDTH, 0),
+      new Point(0, 0)
+    };
   }
 
   static Segment[] getBorders() {
-    return canvas.getBorders();
+    return new Segment[] {
+      Border.TOP.getSegment(),
+      Border.RIGHT.getSegment(),
+      Border.BOTTOM.getSegment(),
+      Border.LEFT.getSegment()
+    };
   }
 
   // not public because no user-defined methods should be executing while
   // a title is displayed.
   boolean hasTitle() {
-    return titleDuration > 0;
+    return world.hasTitle();
   }
 
   /**
@@ -364,7 +571,7 @@ public abstract class Game extends Applet {
    * @see     #getSubtitle
    */
   public static boolean hasSubtitle() {
-    return subtitleDuration > 0 || subtitleDuration == -1;
+    return World.current().hasSubtitle();
   }
 
   /**
@@ -379,7 +586,7 @@ public abstract class Game extends Applet {
     if (titleStyle == null) {
       throw new IllegalArgumentException("titleStyle must not be null.");
     }
-    Game.titleStyle = titleStyle;
+    World.current().titleStyle = titleStyle;
   }
 
   /**
@@ -391,7 +598,7 @@ public abstract class Game extends Applet {
    * @see     #setTitleStyle
    */
   public static TextStyle getTitleStyle() {
-    return titleStyle;
+    return World.current().titleStyle;
   }
 
   /**
@@ -411,19 +618,9 @@ public abstract class Game extends Applet {
     if (title == null) {
       throw new IllegalArgumentException("Title cannot be null.");
     }
-    Game.title = title;
-    Game.titleDuration = duration;
-  }
-
-  void renderTitle(Graphics2D g) {
-    titleDuration--;
-    titleStyle.renderString(
-      title,
-      new Point(WIDTH / 2.0, HEIGHT / 2.0),
-      TextStyle.ReferencePointLocation.CENTER,
-      g,
-      null
-    );
+    World world = World.current();
+    world.title = title;
+    world.titleDuration = duration;
   }
 
   /**
@@ -438,7 +635,7 @@ public abstract class Game extends Applet {
     if (subtitleStyle == null) {
       throw new IllegalArgumentException("subtitleStyle must not be null.");
     }
-    Game.subtitleStyle = subtitleStyle;
+    World.current().subtitleStyle = subtitleStyle;
   }
 
   /**
@@ -450,7 +647,7 @@ public abstract class Game extends Applet {
    * @see     #setSubtitleStyle
    */
   public static TextStyle getSubtitleStyle() {
-    return subtitleStyle;
+    return World.current().subtitleStyle;
   }
 
   /**
@@ -471,8 +668,9 @@ public abstract class Game extends Applet {
     if (duration < 0) {
       throw new IllegalArgumentException("Duration cannot be negative.");
     }
-    Game.subtitle = subtitle;
-    Game.subtitleDuration = duration;
+    World world = World.current();
+    world.subtitle = subtitle;
+    world.subtitleDuration = duration;
   }
 
   /**
@@ -487,12 +685,13 @@ public abstract class Game extends Applet {
    * @see   #getSubtitle
    */
   public static void setSubtitle(String subtitle) {
+    World world = World.current();
     if (subtitle == null) {
-      Game.subtitleDuration = 0;
+      world.subtitleDuration = 0;
     } else {
-      Game.subtitleDuration = -1;
+      world.subtitleDuration = -1;
     }
-    Game.subtitle = subtitle;
+    world.subtitle = subtitle;
   }
 
   /**
@@ -503,26 +702,18 @@ public abstract class Game extends Applet {
    * @see     #setSubtitle
    */
   public static String getSubtitle() {
-    if (!hasSubtitle()) {
+    World world = World.current();
+    if (!world.hasSubtitle()) {
       return null;
     }
 
-    return subtitle;
+    return world.subtitle;
   }
 
-  void renderSubtitle(Graphics2D g) {
-    subtitleDuration--;
-    subtitleStyle.renderString(
-      subtitle,
-      new Point(WIDTH / 2.0, 30),
-      TextStyle.ReferencePointLocation.BOTTOM_CENTER,
-      g,
-      null
-    );
-  }
-
-  void renderCounters(Graphics2D g) {
-    Counter.renderCounters(counters, counterStyle, g);
+  // Captures what the canvas needs to draw the game as it is now.
+  // tickTime is when the most recent tick was scheduled.
+  Snapshot snapshot(long tickTime) {
+    return world.snapshot(tickTime);
   }
 
   /**
@@ -549,7 +740,7 @@ public abstract class Game extends Applet {
     if (behavior == null) {
       throw new IllegalArgumentException("behavior must not be null.");
     }
-    Game.borderBehavior = behavior;
+    World.current().borderBehavior = behavior;
   }
 
   /**
@@ -568,7 +759,150 @@ public abstract class Game extends Applet {
    *          when they reach the border of the window.
    */
   public static BorderBehavior getBorderBehavior() {
-    return borderBehavior;
+    return World.current().borderBehavior;
+  }
+
+  /**
+   * Set how many frames the game runs per second. The game keeps to this
+   * rate even when drawing is slow: shapes move the same distance each
+   * frame, and if the computer falls behind, the game runs a few frames in
+   * a row to catch up. The default is 50 frames per second.
+   *
+   * @param tickRate  the number of frames per second.
+   */
+  public static void setTickRate(double tickRate) {
+    if (!(tickRate > 0) || Double.isInfinite(tickRate)) {
+      throw new IllegalArgumentException("tickRate must be positive.");
+    }
+    World.current().tickRate = tickRate;
+  }
+
+  /**
+   * Returns how many frames the game runs per second.
+   *
+   * @return  the number of frames per second.
+   * @see     #setTickRate(double)
+   */
+  public static double getTickRate() {
+    return World.current().tickRate;
+  }
+
+  /**
+   * Set the most frames the game will run in a row, without drawing in
+   * between, to catch up after falling behind. If the game falls further
+   * behind than that, the extra frames are skipped, and the game slows down
+   * instead of freezing while it catches up. The default is 5.
+   *
+   * @param maxCatchUpTicks the most frames to run before drawing again. Must
+   *                        be at least 1.
+   * @see   #getDroppedTicks
+   */
+  public static void setMaxCatchUpTicks(int maxCatchUpTicks) {
+    if (maxCatchUpTicks < 1) {
+      throw new IllegalArgumentException(
+        "maxCatchUpTicks must be at least 1."
+      );
+    }
+    World.current().maxCatchUpTicks = maxCatchUpTicks;
+  }
+
+  /**
+   * Returns the most frames the game will run in a row to catch up.
+   *
+   * @return  the most frames run before drawing again.
+   * @see     #setMaxCatchUpTicks(int)
+   */
+  public static int getMaxCatchUpTicks() {
+    return World.current().maxCatchUpTicks;
+  }
+
+  /**
+   * Returns how many frames ran late, because the game had fallen behind
+   * and was catching up.
+   *
+   * @return  the number of late frames since the game began.
+   */
+  public static long getLateTicks() {
+    return World.current().lateTicks;
+  }
+
+  /**
+   * Returns how many frames were skipped because the game fell too far
+   * behind to catch up.
+   *
+   * @return  the number of skipped frames since the game began.
+   * @see     #setMaxCatchUpTicks(int)
+   */
+  public static long getDroppedTicks() {
+    return World.current().droppedTicks;
+  }
+
+  /**
+   * Set how many threads move shapes each frame, to spread the work of
+   * checking whether moving shapes will hit solid shapes across several of
+   * the computer's cores. This helps when there are thousands of moving
+   * shapes.
+   * <p>
+   * With 0 threads, the default, each shape moves in turn and sees where
+   * the shapes before it moved to. With 1 or more threads, every shape works
+   * out its move at the same time, from where the other shapes were at the
+   * start of the frame; then the moves are made in turn, and a shape only
+   * works its move out again if a shape that already moved got in its way.
+   * Shapes end up in exactly the same places however many threads are used,
+   * but not always in the same places as with 0 threads.
+   * <p>
+   * Only the automatic movement from {@link Shape#setSpeed} is spread out;
+   * {@link #update()} and each shape's <code>update()</code> still run one
+   * at a time.
+   *
+   * @param threads the number of threads, or 0 to move shapes one at a time.
+   */
+  public static void setUpdateThreads(int threads) {
+    if (threads < 0) {
+      throw new IllegalArgumentException("threads must not be negative.");
+    }
+    World.current().setUpdateThreads(threads);
+  }
+
+  /**
+   * Returns how many threads move shapes each frame.
+   *
+   * @return  the number of threads, or 0 if shapes move one at a time.
+   * @see     #setUpdateThreads(int)
+   */
+  public static int getUpdateThreads() {
+    return World.current().updateThreads;
+  }
+
+  /**
+   * Returns measurements of how long each part of recent frames took. Use
+   * these to find out what is making your game slow.
+   *
+   * @return  the game's frame stats.
+   * @see     #setShowsFrameStats(boolean)
+   */
+  public static FrameStats getFrameStats() {
+    return World.current().frameStats;
+  }
+
+  /**
+   * Set whether the frame stats (see {@link #getFrameStats()}) are shown in
+   * the upper-right corner of the game window.
+   *
+   * @param showsFrameStats true to show the stats, false to hide them.
+   */
+  public static void setShowsFrameStats(boolean showsFrameStats) {
+    World.current().showsFrameStats = showsFrameStats;
+  }
+
+  /**
+   * Returns whether the frame stats are shown in the game window.
+   *
+   * @return  true if the stats are shown, false if not.
+   * @see     #setShowsFrameStats(boolean)
+   */
+  public static boolean showsFrameStats() {
+    return World.current().showsFrameStats;
   }
 
   /**
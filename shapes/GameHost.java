@@ -0,0 +1,338 @@
+package shapes;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+/**
+ * Runs many headless games at the same time, in one program. Each game runs
+ * on its own thread at its own tick rate (see {@link Game#setTickRate}), and
+ * each game has its own shapes and settings, so the games don't affect each
+ * other. This is useful for running one game per player on a server, or for
+ * testing many versions of a game at once.
+ * <p>
+ * On Java 21 and later, each game runs on a virtual thread, which is cheap
+ * enough that a program can run thousands of games. On older versions of
+ * Java, each game gets an ordinary thread.
+ * <p>
+ * Games must be headless (see {@link Game#setHeadless}). The host's threads
+ * don't keep the program running, so use {@link #awaitAll} to wait for the
+ * games to finish.
+ * <p>
+ * <strong>Example usage:</strong>
+ * <p>
+ * <code>
+ *  Game.setHeadless(true);<br />
+ *  GameHost host = new GameHost();<br />
+ *  for (int i = 0; i &lt; 1000; i++) {<br />
+ *  &nbsp;&nbsp;host.start(new MyGame(), 3000);<br />
+ *  }<br />
+ *  host.awaitAll();<br />
+ *  System.out.println(host.getTicksPerSecond());
+ * </code>
+ */
+public class GameHost {
+  // Thread.startVirtualThread(Runnable), or null before Java 21
+  private static final Method startVirtualThread = findStartVirtualThread();
+
+  // a running (or finished) game's loop, and the thread running it
+  private static class Hosted {
+    final GameLoop loop;
+    final Thread thread;
+
+    Hosted(GameLoop loop, Thread thread) {
+      this.loop = loop;
+      this.thread = thread;
+    }
+  }
+
+  private final Map<Game, Hosted> games = new LinkedHashMap<Game, Hosted>();
+  // when the first game started, in System.nanoTime() terms
+  private long startTime;
+
+  /**
+   * Constructs a host with no games.
+   */
+  public GameHost() {
+  }
+
+  private static Method findStartVirtualThread() {
+    try {
+      Method start =
+        Thread.class.getMethod("startVirtualThread", Runnable.class);
+      // virtual threads were a preview feature before Java 21, and can't be
+      // started unless previews are turned on
+      start.invoke(null, new Runnable() {
+        public void run() {
+        }
+      });
+      return start;
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  // Runs task on a virtual thread if there are any, or else on a daemon
+  // thread, so either way the host doesn't keep the program running.
+  private static Thread startThread(Runnable task) {
+    if (startVirtualThread != null) {
+      try {
+        return (Thread) startVirtualThread.invoke(null, task);
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException("couldn't start a virtual thread.", e);
+      }
+    }
+    Thread thread = new Thread(task);
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
+
+  /**
+   * Returns whether games run on virtual threads.
+   *
+   * @return  true if this version of Java has virtual threads, false if each
+   *          game gets an ordinary thread.
+   */
+  public static boolean usesVirtualThreads() {
+    return startVirtualThread != null;
+  }
+
+  /**
+   * Starts running a game, until it's stopped.
+   *
+   * @param game  the game to run. Must be headless, and not already running
+   *              in this host.
+   * @see         #stop(Game)
+   */
+  public void start(Game game) {
+    startLoop(game, -1);
+  }
+
+  /**
+   * Starts running a game for a given number of frames.
+   *
+   * @param game      the game to run. Must be headless, and not already
+   *                  running in this host.
+   * @param maxTicks  the number of frames to run before stopping.
+   */
+  public void start(Game game, long maxTicks) {
+    if (maxTicks < 0) {
+      throw new IllegalArgumentException("maxTicks must not be negative.");
+    }
+    startLoop(game, maxTicks);
+  }
+
+  private synchronized void startLoop(Game game, long maxTicks) {
+    if (game == null) {
+      throw new IllegalArgumentException("game must not be null.");
+    }
+    if (!Game.isHeadless()) {
+      throw new IllegalStateException(
+        "Only headless games can be hosted. See Game.setHeadless."
+      );
+    }
+    if (isRunning(game)) {
+      throw new IllegalArgumentException(
+        "game is already running in this host."
+      );
+    }
+
+    if (games.isEmpty()) {
+      startTime = System.nanoTime();
+    }
+    GameLoop loop = new GameLoop(game, null, maxTicks);
+    games.put(game, new Hosted(loop, startThread(loop)));
+  }
+
+  private synchronized Hosted hosted(Game game) {
+    Hosted hosted = games.get(game);
+    if (hosted == null) {
+      throw new IllegalArgumentException("game was never started here.");
+    }
+    return hosted;
+  }
+
+  private synchronized Hosted[] allHosted() {
+    return games.values().toArray(new Hosted[0]);
+  }
+
+  /**
+   * Pauses a game. It stays paused, without using the computer at all,
+   * until it's resumed.
+   *
+   * @param game  a game started in this host.
+   * @see         #resume(Game)
+   */
+  public void pause(Game game) {
+    hosted(game).loop.pause();
+  }
+
+  /**
+   * Resumes a paused game. The game carries on from where it was paused,
+   * rather than trying to catch up on the frames it missed.
+   *
+   * @param game  a game started in this host.
+   * @see         #pause(Game)
+   */
+  public void resume(Game game) {
+    hosted(game).loop.resume();
+  }
+
+  /**
+   * Stops a game for good, after the frame it's running (if any).
+   *
+   * @param game  a game started in this host.
+   */
+  public void stop(Game game) {
+    hosted(game).loop.stop();
+  }
+
+  /**
+   * Pauses every game in this host.
+   *
+   * @see #pause(Game)
+   */
+  public void pauseAll() {
+    for (Hosted hosted : allHosted()) {
+      hosted.loop.pause();
+    }
+  }
+
+  /**
+   * Resumes every game in this host.
+   *
+   * @see #resume(Game)
+   */
+  public void resumeAll() {
+    for (Hosted hosted : allHosted()) {
+      hosted.loop.resume();
+    }
+  }
+
+  /**
+   * Stops every game in this host.
+   *
+   * @see #stop(Game)
+   */
+  public void stopAll() {
+    for (Hosted hosted : allHosted()) {
+      hosted.loop.stop();
+    }
+  }
+
+  /**
+   * Waits until every game in this host has run all its frames or been
+   * stopped.
+   *
+   * @throws InterruptedException if this thread is interrupted while waiting.
+   */
+  public void awaitAll() throws InterruptedException {
+    for (Hosted hosted : allHosted()) {
+      hosted.thread.join();
+    }
+  }
+
+  /**
+   * Returns whether a game is still running in this host. A paused game
+   * counts as running.
+   *
+   * @param game  any game.
+   * @return      true if <code>game</code> was started in this host and
+   *              hasn't finished or been stopped yet.
+   */
+  public synchronized boolean isRunning(Game game) {
+    Hosted hosted = games.get(game);
+    return hosted != null && hosted.thread.isAlive();
+  }
+
+  /**
+   * Returns how many games are still running in this host.
+   *
+   * @return  the number of games that haven't finished or been stopped.
+   */
+  public int getRunningCount() {
+    int running = 0;
+    for (Hosted hosted : allHosted()) {
+      if (hosted.thread.isAlive()) {
+        running++;
+      }
+    }
+    return running;
+  }
+
+  /**
+   * Returns how many frames a game has run in this host.
+   *
+   * @param game  a game started in this host.
+   * @return      the number of frames run.
+   */
+  public long getTicks(Game game) {
+    return hosted(game).loop.getTicksRun();
+  }
+
+  /**
+   * Returns how many frames all the games in this host have run, together.
+   *
+   * @return  the total number of frames run.
+   */
+  public long getTotalTicks() {
+    long ticks = 0;
+    for (Hosted hosted : allHosted()) {
+      ticks += hosted.loop.getTicksRun();
+    }
+    return ticks;
+  }
+
+  /**
+   * Returns how many frames the games in this host have run per second,
+   * together, since the first game started. If the computer is keeping up,
+   * this is the sum of the games' tick rates.
+   *
+   * @return  the number of frames per second across all games.
+   */
+  public double getTicksPerSecond() {
+    long start;
+    synchronized (this) {
+      if (games.isEmpty()) {
+        return 0;
+      }
+      start = startTime;
+    }
+    long elapsed = System.nanoTime() - start;
+    return elapsed > 0 ? getTotalTicks() * 1e9 / elapsed : 0;
+  }
+
+  /**
+   * Returns how many frames ran late, across all the games in this host,
+   * because the computer fell behind and games were catching up. See
+   * {@link Game#getLateTicks}.
+   *
+   * @return  the total number of late frames.
+   */
+  public long getLateTicks() {
+    long ticks = 0;
+    for (Game game : allGames()) {
+      ticks += game.getWorld().lateTicks;
+    }
+    return ticks;
+  }
+
+  /**
+   * Returns how many frames were skipped, across all the games in this
+   * host, because the computer fell too far behind to catch up. See
+   * {@link Game#getDroppedTicks}.
+   *
+   * @return  the total number of skipped frames.
+   */
+  public long getDroppedTicks() {
+    long ticks = 0;
+    for (Game game : allGames()) {
+      ticks += game.getWorld().droppedTicks;
+    }
+    return ticks;
+  }
+
+  private synchronized Game[] allGames() {
+    return games.keySet().toArray(new Game[0]);
+  }
+}
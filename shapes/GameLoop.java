@@ -0,0 +1,158 @@
+package shapes;
+
+import java.util.concurrent.locks.*;
+
+// Runs a game's ticks at a fixed rate, no matter how long drawing takes, and
+// hands the results to a view to draw as often as the tick rate allows. A
+// loop without a view just runs ticks, which is how GameHost runs headless
+// games. The loop can be paused, resumed and stopped from other threads.
+class GameLoop implements Runnable {
+  // the longest to go without drawing, in nanoseconds, when the tick rate
+  // is low
+  private static final long RENDER_INTERVAL = 1000000000L / 60;
+
+  // Something that draws snapshots of the game.
+  interface View {
+    // Called on the game loop's thread after every batch of ticks, and
+    // between ticks when the tick rate is low. snapshot is the most recent.
+    void show(Snapshot snapshot);
+  }
+
+  private final Game game;
+  private final World world;
+  // null if nothing draws the game
+  private final View view;
+  // the most ticks to run before stopping, or -1 for no limit
+  private final long maxTicks;
+
+  private volatile Thread thread;
+  private volatile boolean paused;
+  private volatile boolean stopped;
+  private volatile long ticksRun;
+
+  GameLoop(Game game, View view) {
+    this(game, view, -1);
+  }
+
+  GameLoop(Game game, View view, long maxTicks) {
+    this.game = game;
+    this.world = game.getWorld();
+    this.view = view;
+    this.maxTicks = maxTicks;
+  }
+
+  void pause() {
+    paused = true;
+  }
+
+  void resume() {
+    paused = false;
+    wake();
+  }
+
+  // Stops the loop after the tick it's running, if any.
+  void stop() {
+    stopped = true;
+    wake();
+  }
+
+  private void wake() {
+    Thread thread = this.thread;
+    if (thread != null) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  boolean isPaused() {
+    return paused;
+  }
+
+  // How many ticks the loop has run.
+  long getTicksRun() {
+    return ticksRun;
+  }
+
+  // How far along we are between the tick a snapshot of world shows and
+  // the next one, from 0 to 1.
+  static double tickProgress(Snapshot snapshot, World world) {
+    double elapsed = System.nanoTime() - snapshot.tickTime;
+    double alpha = elapsed / tickLength(world);
+    return Math.max(0, Math.min(1, alpha));
+  }
+
+  private static long tickLength(World world) {
+    return (long) (1e9 / world.tickRate);
+  }
+
+  public void run() {
+    thread = Thread.currentThread();
+    // the game's update() code runs on this thread
+    World.bind(world);
+
+    long nextTick = System.nanoTime();
+    long lastTickTime = nextTick;
+    Snapshot snapshot = null;
+
+    while (!stopped && ticksRun != maxTicks) {
+      if (paused) {
+        LockSupport.park(this);
+        // don't try to catch up on the time spent paused
+        nextTick = System.nanoTime();
+        continue;
+      }
+      long tickLength = tickLength(world);
+
+      // run every tick that's due, up to the catch-up limit
+      int ticks = 0;
+      while (
+        System.nanoTime() - nextTick >= 0 &&
+        ticks < world.maxCatchUpTicks &&
+        ticksRun != maxTicks &&
+        !stopped &&
+        !paused
+      ) {
+        game.tick();
+        lastTickTime = nextTick;
+        nextTick += tickLength;
+        ticks++;
+        ticksRun++;
+      }
+      if (ticks > 1) {
+        world.countLateTicks(ticks - 1);
+      }
+      if (stopped || ticksRun == maxTicks) {
+        break;
+      }
+
+      // too far behind to catch up, so skip ahead. If the game was paused
+      // part way through catching up, nothing is dropped; the time is
+      // skipped when it resumes.
+      long behind = System.nanoTime() - nextTick;
+      if (behind >= 0 && !paused) {
+        long dropped = behind / tickLength + 1;
+        world.countDroppedTicks(dropped);
+        nextTick += dropped * tickLength;
+        lastTickTime = nextTick - tickLength;
+      }
+
+      if (view != null) {
+        if (ticks > 0) {
+          snapshot = game.snapshot(lastTickTime);
+        }
+        if (snapshot != null) {
+          view.show(snapshot);
+        }
+      }
+
+      long sleep = nextTick - System.nanoTime();
+      if (view != null) {
+        sleep = Math.min(sleep, RENDER_INTERVAL);
+      }
+
+      // parking rather than sleeping lets resume() and stop() wake the loop
+      if (sleep > 0) {
+        LockSupport.parkNanos(this, sleep);
+      }
+    }
+  }
+}
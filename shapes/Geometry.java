@@ -1,6 +1,5 @@
 package shapes;
 
-import java.util.*;
 import static java.lang.Math.*;
 
 abstract class Geometry {
@@ -10,14 +9,31 @@ abstract class Geometry {
   // used for judging closeness (0.5 pixels apart == touching)
   static final double TOLERANCE = 0.5;
 
-  // Returns false if the code for the given shape pair hasn't been written yet (in distance(Shape, Shape))
-  // When writing new touching() methods, remember to use TOLERANCE. This means some other Geometry methods
-  // (such as intersection(Circle, Segment)) won't be reliable.
+  // how many steps timeOfImpact() takes before giving up
+  private static final int MAX_ADVANCEMENTS = 32;
+  // how far inside TOLERANCE timeOfImpact() aims each step
+  private static final double TOI_SLOP = 0.01;
+
+  // GJK keeps its simplex in arrays, so reuse one per thread rather than
+  // allocating a new one for every query
+  private static final ThreadLocal<Gjk> GJK = new ThreadLocal<Gjk>() {
+    @Override
+    protected Gjk initialValue() {
+      return new Gjk();
+    }
+  };
+
+  // Returns false for shapes other than circles and convex polygons. When
+  // writing new touching() methods, remember to use TOLERANCE: shapes less
+  // than TOLERANCE apart count as touching.
   static boolean touching(Shape s, Shape t) {
     // Eww, gross code. Not sure of the best way to do this. Could instead have
     // identical isTouching() methods in each shape subclass, but that's also
     // not nice, since the actual computations should be in Geometry to avoid
     // duplication.
+    if (!boundingCirclesMeet(s, 0, 0, t)) {
+      return false;
+    }
     if (s instanceof Circle) {
       if (t instanceof Circle) {
         return touching((Circle) s, (Circle) t);
@@ -44,64 +60,104 @@ abstract class Geometry {
   }
 
   static boolean touching(Circle circle, ConvexPolygon poly) {
-    for (Point corner : poly.getCorners()) {
-      if (distance(corner, circle.getCenter()) <
-          circle.getRadius() + TOLERANCE) {
-        return true;
-      }
-    }
+    Gjk gjk = GJK.get();
+    gjk.compute(circle, poly);
+    return gjk.distance < TOLERANCE;
+  }
 
-    for (Segment side : poly.getSides()) {
-      if (touching(circle, side)) {
-        return true;
-      }
+  // Separating axis test. Two convex polygons are apart exactly when some
+  // side's normal separates them, so project both polygons onto each normal
+  // and stop at the first one with a gap of at least TOLERANCE.
+  static boolean touching(ConvexPolygon s, ConvexPolygon t) {
+    double gap = separation(s, t);
+    if (gap >= TOLERANCE) {
+      return false;
     }
-
-    if (circle.contains(poly) || poly.contains(circle)) {
+    gap = max(gap, separation(t, s));
+    if (gap >= TOLERANCE) {
+      return false;
+    }
+    if (gap <= 0) {
+      // overlapping along every axis, so the polygons intersect
       return true;
     }
 
-    return false;
+    // The polygons are apart, but by less than TOLERANCE along the best
+    // axis. Near corners the real distance can be longer than that, so
+    // measure it.
+    return polygonDistance(s, t) < TOLERANCE;
   }
 
-  static boolean touching(ConvexPolygon s, ConvexPolygon t) {
-    for (Point corner : s.getCorners()) {
-      for (Segment side : t.getSides()) {
-        if (touching(side, corner)) {
-          return true;
-        }
-      }
-    }
+  // Returns the largest gap between s and t along any of s's side normals,
+  // or returns early once a gap of at least TOLERANCE is found. A negative
+  // result means the projections overlap on every one of those axes.
+  private static double separation(ConvexPolygon s, ConvexPolygon t) {
+    double[] sx = s.cornerXs(), sy = s.cornerYs();
+    double[] nx = s.normalXs(), ny = s.normalYs();
+    double[] tx = t.cornerXs(), ty = t.cornerYs();
 
-    for (Segment side : s.getSides()) {
-      for (Point corner : t.getCorners()) {
-        if (touching(side, corner)) {
-          return true;
-        }
+    double largestGap = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < sx.length; i++) {
+      // the normal points outward, so s extends no further along it than
+      // the side's own corners
+      double sMax = nx[i] * sx[i] + ny[i] * sy[i];
+      double tMin = Double.POSITIVE_INFINITY;
+      for (int j = 0; j < tx.length; j++) {
+        tMin = min(tMin, nx[i] * tx[j] + ny[i] * ty[j]);
       }
-    }
-
-    for (Point cornerA : s.getCorners()) {
-      for (Point cornerB : t.getCorners()) {
-        if (touching(cornerA, cornerB)) {
-          return true;
-        }
+      double gap = tMin - sMax;
+      if (gap >= TOLERANCE) {
+        return gap;
       }
+      largestGap = max(largestGap, gap);
     }
+    return largestGap;
+  }
 
-    for (Segment sideA : s.getSides()) {
-      for (Segment sideB : t.getSides()) {
-        if (segmentIntersection(sideA, sideB) != null) {
-          return true;
-        }
-      }
-    }
+  // assumes the polygons don't intersect
+  private static double polygonDistance(ConvexPolygon s, ConvexPolygon t) {
+    return min(cornersToSides(s, t), cornersToSides(t, s));
+  }
 
-    if (s.contains(t) || t.contains(s)) {
-      return true;
+  // shortest distance from one of s's corners to one of t's sides
+  private static double cornersToSides(ConvexPolygon s, ConvexPolygon t) {
+    double[] sx = s.cornerXs(), sy = s.cornerYs();
+    double[] tx = t.cornerXs(), ty = t.cornerYs();
+    double distance = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < sx.length; i++) {
+      distance = min(distance, Kernel.polygonDistance(tx, ty, sx[i], sy[i]));
     }
+    return distance;
+  }
 
-    return false;
+  // Checks whether s's bounding circle, swept from s's center to that point
+  // plus (dx, dy), comes within TOLERANCE of t's bounding circle. If it
+  // doesn't, no part of s can get within TOLERANCE of t on the way.
+  static boolean boundingCirclesMeet(Shape s, double dx, double dy, Shape t) {
+    Point from = s.getCenter();
+    Point center = t.getCenter();
+    return Kernel.segmentDistance(
+      from.getX(), from.getY(),
+      from.getX() + dx, from.getY() + dy,
+      center.getX(), center.getY()
+    ) <= s.boundingRadius() + t.boundingRadius() + TOLERANCE;
+  }
+
+  // Checks whether seg comes within TOLERANCE of shape's bounding circle.
+  static boolean boundingCircleMeets(Shape shape, Segment seg) {
+    return segmentDistance(seg, shape.getCenter()) <=
+      shape.boundingRadius() + TOLERANCE;
+  }
+
+  // Checks whether seg comes within TOLERANCE of shape's bounding circle
+  // swept from shape's center to target.
+  static boolean boundingCircleMeets(Shape shape, Point target, Segment seg) {
+    Point from = shape.getCenter();
+    return Kernel.segmentsDistance(
+      from.getX(), from.getY(), target.getX(), target.getY(),
+      seg.getStart().getX(), seg.getStart().getY(),
+      seg.getEnd().getX(), seg.getEnd().getY()
+    ) <= shape.boundingRadius() + TOLERANCE;
   }
 
   static boolean touching(Circle s, Circle t) {
@@ -110,34 +166,28 @@ abstract class Geometry {
   }
 
   static boolean touching(Circle circle, Segment seg) {
-    Segment perp = perpendicularThrough(seg, circle.getCenter());
-    if (perp.length() < circle.getRadius() + TOLERANCE &&
-        seg.contains(perp.getEnd())
-    ) {
-      return true;
-    }
-    return false;
+    Point center = circle.getCenter();
+    return Kernel.circleTouchesSegment(
+      center.getX(), center.getY(), circle.getRadius(),
+      seg.getStart().getX(), seg.getStart().getY(),
+      seg.getEnd().getX(), seg.getEnd().getY()
+    );
   }
 
   static boolean touching(ConvexPolygon poly, Segment seg) {
-    for (Segment side : poly.getSides()) {
-      if (segmentIntersection(side, seg) != null) {
-        return true;
-      }
-    }
-
-    for (Point corner : poly.getCorners()) {
-      if (touching(seg, corner)) {
-        return true;
-      }
-    }
-
-    return false;
+    return Kernel.polygonTouchesSegment(
+      poly.cornerXs(), poly.cornerYs(),
+      seg.getStart().getX(), seg.getStart().getY(),
+      seg.getEnd().getX(), seg.getEnd().getY()
+    );
   }
 
   // Returns false if the code for the given shape pair hasn't been written yet.
   // nate: test
   static boolean touching(Shape shape, Segment seg) {
+    if (!boundingCircleMeets(shape, seg)) {
+      return false;
+    }
     if (shape instanceof Circle) {
       return touching((Circle) shape, seg);
     } else if (shape instanceof ConvexPolygon) {
@@ -148,12 +198,11 @@ abstract class Geometry {
   }
 
   static boolean touching(Segment seg, Point point) {
-    Segment perp = perpendicularThrough(seg, point);
-    if (perp.length() < TOLERANCE && seg.contains(perp.getEnd())) {
-      return true;
-    }
-
-    return false;
+    return Kernel.segmentTouchesPoint(
+      seg.getStart().getX(), seg.getStart().getY(),
+      seg.getEnd().getX(), seg.getEnd().getY(),
+      point.getX(), point.getY()
+    );
   }
 
   static boolean touching(Point s, Point t) {
@@ -162,132 +211,18 @@ abstract class Geometry {
 
   // static boolean touching(Segment, Segment);
   // does not exist because the other touching methods test the interior
-  // of segments (using segmentIntersection) and their endpoints (using 
-  // touching(Segment, Point)) individually
-
-  // returns null for no intersection
-  static Point[] intersection(BasicCircle s, BasicCircle t) {
-    double distance = distance(s.center, t.center);
-    if (distance > s.radius + t.radius) {
-      return null;
-    }
-    
-    // in the triangle formed by two radii and the segment connecting the
-    // circles' centers, theta is the angle at s's center.
-    double theta = acos(
-      (-1 * sq(s.radius) + sq(t.radius) + sq(distance)) /
-      (2 * t.radius * distance)
-    );  // law of cosines
-
-    Direction betweenCenters = new Direction(t.center, s.center);
-    Direction[] radiiDirections = new Direction[2];
-    radiiDirections[0] = betweenCenters.rotationByRadians(theta);
-    radiiDirections[1] = betweenCenters.rotationByRadians(-1.0 * theta);
-
-    Point[] intersections = new Point[2];
-    for (int i = 0; i < intersections.length; i++) {
-      Vector radius = new Vector(radiiDirections[i], t.radius);
-      intersections[i] = t.center.translation(radius);
-    }
-    return intersections;
-  }
-
-  // nate: test
-  // line intersection, not segment intersection
-  // returns empty array for no intersection
-  static Point[] lineIntersection(BasicCircle circle, Segment line) {
-    Segment perp = perpendicularThrough(line, circle.center);
-    if (perp.length() > circle.radius) {
-      return new Point[0];
-    }
-
-    // angle (at the center of the circle) between the perpendicular and
-    // the radii to points of intersection
-    double radiansFromPerp = acos(perp.length() / circle.radius);
-
-    // direction of radii to points of intersection
-    Direction[] radiusDirection = new Direction[] {
-      perp.direction().rotationByRadians(radiansFromPerp),
-      perp.direction().rotationByRadians(-1.0 * radiansFromPerp)
-    };
-
-    Point[] pointOfIntersection = new Point[radiusDirection.length];
-    for (int i = 0; i < radiusDirection.length; i++) {
-      Vector radius = new Vector(radiusDirection[i], circle.radius);
-      pointOfIntersection[i] =
-        circle.center.translation(radius);
-    }
-
-    return pointOfIntersection;
-  }
-
-  static Point[] segmentIntersection(BasicCircle circle, Segment seg) {
-    List<Point> segmentIntersections = new ArrayList<Point>();
-    for (Point intersection : lineIntersection(circle, seg)) {
-      if (seg.contains(intersection)) {
-        segmentIntersections.add(intersection);
-      }
-    }
-    return segmentIntersections.toArray(new Point[0]);
-  }
-
-  // returns null for parallel lines
-  static Point lineIntersection(Segment s, Segment t) {
-    double denominator = s.getA() * t.getB() - s.getB() * t.getA();
-    if (Math.abs(denominator) < EPSILON) {
-      return null;
-    }
-
-    double x = (s.getC() * t.getB() - s.getB() * t.getC()) / denominator;
-    double y = (s.getA() * t.getC() - s.getC() * t.getA()) / denominator;
-    return new Point(x, y);
-  }
-
-  static Point segmentIntersection(Segment s, Segment t) {
-    Point intersection = lineIntersection(s, t);
-    if (intersection == null) {
-      return null;
-    }
-    if (s.contains(intersection) && t.contains(intersection)) {
-      return intersection;
-    } else {
-      return null;
-    }
-  }
-
-  static Point segmentLineIntersection(Segment segment, Segment line) {
-    Point intersection = lineIntersection(segment, line);
-    if (intersection == null) {
-      return null;
-    }
-    if (segment.contains(intersection)) {
-      return intersection;
-    } else {
-      return null;
-    }
-  }
+  // of segments and their endpoints individually (see Kernel)
 
-  // Returns a segment perpendicular to the original segment, starting at the
-  // given point and ending on the segment (or corresponding line).
-  static Segment perpendicularThrough(Segment original, Point through) {
-    if (original.length() < EPSILON) {
-      // nate: WTF do I do in this case?
-      return new Segment(through, original.getStart());
+  static Point maxMovement(Shape mover, Point target, Shape obstacle) {
+    mover.world.movementChecks.increment();
+    double dx = target.getX() - mover.getCenter().getX();
+    double dy = target.getY() - mover.getCenter().getY();
+    if (!sweptBoundsOverlap(mover, target, obstacle) ||
+        !boundingCirclesMeet(mover, dx, dy, obstacle)) {
+      mover.world.skippedMovementChecks.increment();
+      return target;
     }
-    // perp is perpendicular and has the correct start, but does not have the
-    // correct end
-    Segment perp = new Segment(
-      through,
-      through.translation(original.vector().perpendicular())
-    );
 
-    Point intersection = lineIntersection(original, perp);
-    
-    return new Segment(through, intersection);
-  }
-
-  static Point maxMovement(Shape mover, Point target, Shape obstacle) {
-    Segment path = new Segment(mover.getCenter(), target);
     Point maxMove = null;
 
     if (mover instanceof Circle) {
@@ -308,38 +243,39 @@ abstract class Geometry {
       return target;
     }
 
-    maxMove = insertGap(mover, path, maxMove);
+    maxMove = insertGap(mover, target, maxMove);
     return maxMove;
   }
 
+  // Checks whether the box swept out by mover's bounding box on the way to
+  // target comes within TOLERANCE of obstacle's bounding box. If it doesn't,
+  // obstacle can't be in the way.
+  static boolean sweptBoundsOverlap(Shape mover, Point target, Shape obstacle) {
+    double dx = target.getX() - mover.getCenter().getX();
+    double dy = target.getY() - mover.getCenter().getY();
+    return
+      mover.getLeft() + min(dx, 0) - TOLERANCE <= obstacle.getRight() &&
+      mover.getRight() + max(dx, 0) + TOLERANCE >= obstacle.getLeft() &&
+      mover.getBottom() + min(dy, 0) - TOLERANCE <= obstacle.getTop() &&
+      mover.getTop() + max(dy, 0) + TOLERANCE >= obstacle.getBottom();
+  }
+
+  // The maxMovement() and maxRotation() methods below unpack their arguments
+  // and do the work in Kernel, which doesn't allocate.
+
   // if mover wants to go to target, but obstacle is in the way,
   // how far can it go?
   static Point maxMovement(Circle mover, Point target, Circle obstacle) {
-    Segment path = new Segment(mover.getCenter(), target);
-    Point maxMove = target;
-
-    Segment obstacleToPath = perpendicularThrough(path, obstacle.getCenter());
-    double distanceToPath = obstacleToPath.length();
-    double distanceBetweenCenters = mover.getRadius() + obstacle.getRadius();
-
-    if (distanceToPath > distanceBetweenCenters) {
-      return target;   // no collision
-    }
-
-    // nate: rename variables
-    // closest is the point on path closest to obstacle center
-    // stopPoint is where the center of mover will be after moving
-    Point closest = obstacleToPath.getEnd();
-    double distanceToStopPoint =
-      sqrt(sq(distanceBetweenCenters) - sq(distanceToPath));
-    maxMove =
-      closest.translation(path.direction().reverse(), distanceToStopPoint);
-
-    if (!path.contains(maxMove)) {
-      return target;
-    }
-
-    return maxMove;
+    Point start = mover.getCenter();
+    double[] maxMove = new double[] { target.getX(), target.getY() };
+    Kernel.circleVsCircle(
+      start.getX(), start.getY(), target.getX(), target.getY(),
+      mover.getRadius(),
+      obstacle.getCenter().getX(), obstacle.getCenter().getY(),
+      obstacle.getRadius(),
+      maxMove
+    );
+    return toPoint(maxMove, target);
   }
 
   static Point maxMovement(
@@ -347,71 +283,31 @@ abstract class Geometry {
       Point target,
       ConvexPolygon obstacle
   ) {
-    Segment path = new Segment(mover.getCenter(), target);
-    Point maxMove = target;
-
-    for (Point corner : obstacle.getCorners()) {
-      Segment perp = perpendicularThrough(path, corner);
-      double perpDistance = perp.length();
-      if (perpDistance > mover.getRadius()) {
-        continue;
-      }
-
-      Point closest = perp.getEnd();
-      double centerDestinationToClosest =
-        sqrt(sq(mover.getRadius()) - sq(perpDistance));
-      Point centerDestination = closest.translation(
-        path.direction().reverse(),
-        centerDestinationToClosest
-      );
-      
-      if (isShorterMovement(centerDestination, maxMove, path)) {
-        maxMove = centerDestination;
-      }
-    }
-
-    for (Segment side : obstacle.getSides()) {
-      Point centerDestination = maxMovement(mover, target, side);
-      
-      if (isShorterMovement(centerDestination, maxMove, path)) {
-        maxMove = centerDestination;
-      }
-    }
-
-    return maxMove;
+    Point start = mover.getCenter();
+    double[] maxMove = new double[] { target.getX(), target.getY() };
+    Kernel.circleVsPolygon(
+      start.getX(), start.getY(), target.getX(), target.getY(),
+      mover.getRadius(),
+      obstacle.cornerXs(), obstacle.cornerYs(),
+      maxMove
+    );
+    return toPoint(maxMove, target);
   }
 
   static Point maxMovement(Circle mover, Point target, Segment obstacle) {
-    Segment path = new Segment(mover.getCenter(), target);
-    Point segmentPathIntersection = lineIntersection(obstacle, path);
-    if (segmentPathIntersection == null) {
+    if (!boundingCircleMeets(mover, target, obstacle)) {
       return target;
     }
-    double segmentPathAngle =
-      interiorRadians(path.direction(), obstacle.direction());
-    double hypoteneuse = mover.getRadius() / sin(segmentPathAngle);
-    Point centerDestination = segmentPathIntersection.translation(
-      path.direction().reverse(),
-      hypoteneuse
+    Point start = mover.getCenter();
+    double[] maxMove = new double[] { target.getX(), target.getY() };
+    Kernel.circleVsSegment(
+      start.getX(), start.getY(), target.getX(), target.getY(),
+      mover.getRadius(),
+      obstacle.getStart().getX(), obstacle.getStart().getY(),
+      obstacle.getEnd().getX(), obstacle.getEnd().getY(),
+      maxMove
     );
-
-    if (
-      distance(mover.getCenter(), centerDestination) >
-      distance(mover.getCenter(), segmentPathIntersection)
-    ) {
-      // obstacle is facing the wrong way for a collision to occur
-      return target;
-    }
-
-    Segment destinationRadius =
-      perpendicularThrough(obstacle, centerDestination);
-
-    if (!obstacle.contains(destinationRadius.getEnd()) ||
-        !path.contains(centerDestination)) {
-      return target;
-    }
-    
-    return centerDestination;
+    return toPoint(maxMove, target);
   }
 
   static Point maxMovement(
@@ -419,43 +315,15 @@ abstract class Geometry {
       Point target,
       ConvexPolygon obstacle
   ) {
-    Point maxMove = target;
-    // nate: maybe parameters should be maxMovement(mover, path, obstacle)
-    // to avoid recreating path?
-    Segment path = new Segment(mover.getCenter(), target);
-
-    // Two cases: corner hits side, side hits corner
-    for (Segment obstacleSide : obstacle.getSides()) {
-      Point centerDestination = maxMovement(mover, target, obstacleSide);
-      
-      if (isShorterMovement(centerDestination, maxMove, path)) {
-        maxMove = centerDestination;
-      }
-    }
-
-    for (Point obstacleCorner : obstacle.getCorners()) {
-      for (Segment side : mover.getSides()) {
-        // intersectionPath is a line parallel to path through obstacleCorner
-        Segment intersectionPath = new Segment(
-          obstacleCorner, 
-          obstacleCorner.translation(path.vector())
-        );
-        Point intersectionOrigin = segmentLineIntersection(side, intersectionPath);
-        if (intersectionOrigin == null) {
-          continue;
-        }
-        Vector intersectionOffset =
-          new Vector(mover.getCenter(), intersectionOrigin);
-        Point centerDestination =
-          obstacleCorner.translation(intersectionOffset.reverse());
-
-        if (isShorterMovement(centerDestination, maxMove, path)) {
-          maxMove = centerDestination;
-        }
-      }
-    }
-
-    return maxMove;
+    Point start = mover.getCenter();
+    double[] maxMove = new double[] { target.getX(), target.getY() };
+    Kernel.polygonVsPolygon(
+      start.getX(), start.getY(), target.getX(), target.getY(),
+      mover.cornerXs(), mover.cornerYs(),
+      obstacle.cornerXs(), obstacle.cornerYs(),
+      maxMove
+    );
+    return toPoint(maxMove, target);
   }
 
   static Point maxMovement(
@@ -463,68 +331,16 @@ abstract class Geometry {
       Point target,
       Circle obstacle
   ) {
-    Point maxMove = target;
-    Segment path = new Segment(mover.getCenter(), target);
-
-    // check corner collisions
-    for (Point corner : mover.getCorners()) {
-      Vector cornerOffset = new Vector(mover.getCenter(), corner);
-      Point cornerTarget = target.translation(cornerOffset);
-      Segment cornerPath = new Segment(corner, cornerTarget);
-
-      Point[] intersections =
-        lineIntersection(new BasicCircle(obstacle), cornerPath);
-      if (intersections.length < 2) {
-        // length is either 0 or 2
-        continue;
-      }
-
-      // of the two intersection points, this one is closer to mover's starting point
-      Point closer; 
-      if (
-        distance(intersections[0], corner) <
-        distance(intersections[1], corner)
-      ) {
-        closer = intersections[0];
-      } else {
-        closer = intersections[1];
-      }
-
-      Point centerDestination = closer.translation(cornerOffset.reverse());
-      if (isShorterMovement(centerDestination, maxMove, path)) {
-        maxMove = centerDestination;
-      }
-    }
-
-    // check side collisions
-    for (Segment side : mover.getSides()) {
-      Segment perp = perpendicularThrough(side, obstacle.getCenter());
-      Vector radiusToIntersection =
-        new Vector(perp.direction(), obstacle.getRadius());
-      Point intersection = obstacle.getCenter().translation(radiusToIntersection);
-
-      // intersectionPath has the correction direction, but not
-      // the correct endpoints
-      Segment intersectionPath =
-        new Segment(intersection, intersection.translation(path.vector()));
-      Point intersectionOrigin =
-        segmentLineIntersection(side, intersectionPath);
-      
-      if (intersectionOrigin == null) {
-        continue;
-      }
-
-      Vector intersectionOffset =
-        new Vector(mover.getCenter(), intersectionOrigin);
-      Point centerDestination =
-        intersection.translation(intersectionOffset.reverse());
-
-      if (isShorterMovement(centerDestination, maxMove, path)) {
-        maxMove = centerDestination;
-      }
-    }
-
-    return maxMove;
+    Point start = mover.getCenter();
+    double[] maxMove = new double[] { target.getX(), target.getY() };
+    Kernel.polygonVsCircle(
+      start.getX(), start.getY(), target.getX(), target.getY(),
+      mover.cornerXs(), mover.cornerYs(),
+      obstacle.getCenter().getX(), obstacle.getCenter().getY(),
+      obstacle.getRadius(),
+      maxMove
+    );
+    return toPoint(maxMove, target);
   }
 
   static Point maxMovement(
@@ -532,40 +348,38 @@ abstract class Geometry {
       Point target,
       Segment obstacle
   ) {
-    Point maxMove = target;
-    Segment path = new Segment(mover.getCenter(), target);
-
-    for (Point corner : mover.getCorners()) {
-      Vector cornerOffset = new Vector(mover.getCenter(), corner);
-      Segment cornerPath =
-        new Segment(corner, target.translation(cornerOffset));
-      Point intersection =
-        segmentLineIntersection(obstacle, cornerPath);
-      if (intersection == null) {
-        continue;
-      }
-      Point centerDestination =
-        intersection.translation(cornerOffset.reverse());
-
-      if (isShorterMovement(centerDestination, maxMove, path)) {
-        maxMove = centerDestination;
-      }
+    if (!boundingCircleMeets(mover, target, obstacle)) {
+      return target;
     }
-
-    return maxMove;
+    Point start = mover.getCenter();
+    double[] maxMove = new double[] { target.getX(), target.getY() };
+    Kernel.polygonVsSegment(
+      start.getX(), start.getY(), target.getX(), target.getY(),
+      mover.cornerXs(), mover.cornerYs(),
+      obstacle.getStart().getX(), obstacle.getStart().getY(),
+      obstacle.getEnd().getX(), obstacle.getEnd().getY(),
+      maxMove
+    );
+    return toPoint(maxMove, target);
   }
 
-  static Point insertGap(Shape mover, Segment path, Point maxMove) {
+  static Point insertGap(Shape mover, Point target, Point maxMove) {
     // nate: put buffer between mover and obstacle, not along mover's path?
-    Vector backwards =
-      new Vector(path.vector().getDirection().reverse(), TOLERANCE / 4.0);
-    Point ret = maxMove.translation(backwards);
-    if (!path.contains(ret)) {
-      // but don't overcompensate
-      ret = mover.getCenter();
-    }
+    Point start = mover.getCenter();
+    double[] ret = new double[] { maxMove.getX(), maxMove.getY() };
+    Kernel.insertGap(
+      start.getX(), start.getY(), target.getX(), target.getY(),
+      ret
+    );
+    return toPoint(ret, start);
+  }
 
-    return ret;
+  // returns unchanged if point holds its coordinates
+  private static Point toPoint(double[] point, Point unchanged) {
+    if (point[0] == unchanged.getX() && point[1] == unchanged.getY()) {
+      return unchanged;
+    }
+    return new Point(point[0], point[1]);
   }
 
   static Direction insertGap(
@@ -574,17 +388,21 @@ abstract class Geometry {
       Direction target,
       Direction maxRotate
   ) {
-    Direction ret;
-    if (clockwise) {
-      ret = maxRotate.rotationByDegrees(0.05);
-    } else {
-      ret = maxRotate.rotationByDegrees(-0.05);
-    }
-    if (closer(rotator.getDirection(), clockwise, ret, maxRotate) == ret) {
-      return ret;
-    } else {
-      return rotator.getDirection();
+    Direction origin = rotator.getDirection();
+    double ret = Kernel.insertGap(
+      origin.toDegrees(),
+      clockwise,
+      maxRotate.toDegrees()
+    );
+    return toDirection(ret, origin);
+  }
+
+  // returns unchanged if it points in the given direction
+  private static Direction toDirection(double degrees, Direction unchanged) {
+    if (degrees == unchanged.toDegrees()) {
+      return unchanged;
     }
+    return new Direction(degrees);
   }
 
   static double interiorRadians(Direction dirA, Direction dirB) {
@@ -598,28 +416,17 @@ abstract class Geometry {
     return difference;
   }
 
-  // helper method for maxMovement()
-  private static boolean isShorterMovement(
-    Point candidate,
-    Point leader,
-    Segment path
-  ) {
-
-    if (!path.contains(candidate)) {
-      return false;
-    }
-
-    return
-      distance(candidate, path.getStart()) <
-      distance(leader, path.getStart());
-  }
-
   static Direction maxRotation(
       Shape rotator,
       Direction target,
       boolean clockwise,
       Shape obstacle
   ) {
+    if (!boundingCirclesMeet(rotator, 0, 0, obstacle)) {
+      // however far it turns, rotator stays inside its bounding circle
+      return target;
+    }
+
     Direction maxRotate = null;
     if (rotator instanceof Circle) {
       maxRotate = target;   // circle rotation doesn't cause collisions
@@ -655,6 +462,10 @@ abstract class Geometry {
       boolean clockwise,
       Segment obstacle
   ) {
+    if (!boundingCircleMeets(rotator, obstacle)) {
+      return target;
+    }
+
     Direction maxRotate = null;
     if (rotator instanceof Circle) {
       maxRotate = target;   // circle rotation doesn't cause collisions
@@ -681,26 +492,14 @@ abstract class Geometry {
       boolean clockwise,
       Segment obstacle
   ) {
-    Direction maxRotate = target;
-    Direction origin = rotator.getDirection();
-
-    for (Point corner : rotator.getCorners()) {
-      Direction cornerOrigin = new Direction(rotator.getCenter(), corner);
-      double cornerOffset = cornerOrigin.toRadians() - origin.toRadians();
-      Direction cornerTarget = target.rotationByRadians(cornerOffset);
-      Direction cornerCandidate = maxRotation(
-        corner,
-        rotator.getCenter(),
-        cornerTarget,
-        clockwise,
-        obstacle
-      );
-      Direction candidate =
-        cornerCandidate.rotationByRadians(-1 * cornerOffset);
-      maxRotate = closer(origin, clockwise, candidate, maxRotate);
-    }
-
-    return maxRotate;
+    double maxRotate = Kernel.polygonVsSegment(
+      rotator.cornerXs(), rotator.cornerYs(),
+      rotator.getCenter().getX(), rotator.getCenter().getY(),
+      rotator.getDirection().toDegrees(), target.toDegrees(), clockwise,
+      obstacle.getStart().getX(), obstacle.getStart().getY(),
+      obstacle.getEnd().getX(), obstacle.getEnd().getY()
+    );
+    return toDirection(maxRotate, target);
   }
 
   static Direction maxRotation(
@@ -709,43 +508,14 @@ abstract class Geometry {
       boolean clockwise,
       Circle obstacle
   ) {
-    Direction maxRotate = target;
-    Direction origin = rotator.getDirection();
-
-    for (Point corner : rotator.getCorners()) {
-      Direction cornerOrigin = new Direction(rotator.getCenter(), corner);
-      double cornerOffset = cornerOrigin.toRadians() - origin.toRadians();
-      Direction cornerTarget = target.rotationByRadians(cornerOffset);
-      Direction cornerCandidate = maxRotation(
-        corner,
-        rotator.getCenter(),
-        cornerTarget,
-        clockwise,
-        obstacle
-      );
-      Direction candidate =
-        cornerCandidate.rotationByRadians(-1 * cornerOffset);
-      maxRotate = closer(origin, clockwise, candidate, maxRotate);
-    }
-
-    for (Segment side : rotator.getSides()) {
-      Direction sideOrigin =
-        new Direction(rotator.getCenter(), side.getStart());
-      double sideOffset = sideOrigin.toRadians() - origin.toRadians();
-      Direction sideTarget = target.rotationByRadians(sideOffset);
-      Direction sideCandidate = maxRotation(
-        side,
-        rotator.getCenter(),
-        sideTarget,
-        clockwise,
-        obstacle
-      );
-      Direction candidate =
-        sideCandidate.rotationByRadians(-1 * sideOffset);
-      maxRotate = closer(origin, clockwise, candidate, maxRotate);
-    }
-
-    return maxRotate;
+    double maxRotate = Kernel.polygonVsCircle(
+      rotator.cornerXs(), rotator.cornerYs(),
+      rotator.getCenter().getX(), rotator.getCenter().getY(),
+      rotator.getDirection().toDegrees(), target.toDegrees(), clockwise,
+      obstacle.getCenter().getX(), obstacle.getCenter().getY(),
+      obstacle.getRadius()
+    );
+    return toDirection(maxRotate, target);
   }
 
   static Direction maxRotation(
@@ -754,47 +524,13 @@ abstract class Geometry {
       boolean clockwise,
       ConvexPolygon obstacle
   ) {
-    Direction maxRotate = target;
-    Direction origin = rotator.getDirection();
-
-    for (Point corner : rotator.getCorners()) {
-      Direction cornerOrigin = new Direction(rotator.getCenter(), corner);
-      double cornerOffset = cornerOrigin.toRadians() - origin.toRadians();
-      Direction cornerTarget = target.rotationByRadians(cornerOffset);
-      for (Segment obstacleSide : obstacle.getSides()) {
-        Direction cornerCandidate = maxRotation(
-          corner,
-          rotator.getCenter(),
-          cornerTarget,
-          clockwise,
-          obstacleSide
-        );
-        Direction candidate =
-          cornerCandidate.rotationByRadians(-1 * cornerOffset);
-        maxRotate = closer(origin, clockwise, candidate, maxRotate);
-      }
-    }
-
-    for (Segment side : rotator.getSides()) {
-      Direction sideOrigin =
-        new Direction(rotator.getCenter(), side.getStart());
-      double sideOffset = sideOrigin.toRadians() - origin.toRadians();
-      Direction sideTarget = target.rotationByRadians(sideOffset);
-      for (Point obstacleCorner : obstacle.getCorners()) {
-        Direction sideCandidate = maxRotation(
-          side,
-          rotator.getCenter(),
-          sideTarget,
-          clockwise,
-          obstacleCorner
-        );
-        Direction candidate =
-          sideCandidate.rotationByRadians(-1 * sideOffset);
-        maxRotate = closer(origin, clockwise, candidate, maxRotate);
-      }
-    }
-
-    return maxRotate;
+    double maxRotate = Kernel.polygonVsPolygon(
+      rotator.cornerXs(), rotator.cornerYs(),
+      rotator.getCenter().getX(), rotator.getCenter().getY(),
+      rotator.getDirection().toDegrees(), target.toDegrees(), clockwise,
+      obstacle.cornerXs(), obstacle.cornerYs()
+    );
+    return toDirection(maxRotate, target);
   }
 
   // returns direction from pivot to rotator.getStart()
@@ -805,47 +541,15 @@ abstract class Geometry {
     boolean clockwise,
     Circle obstacle
   ) {
-    Direction maxRotate = target;
-    Direction origin = new Direction(pivot, rotator.getStart());
-
-    // Instead of rotating rotator, imagine revolving obstacle around pivot
-    // and finding the points where it is tangent to rotator. To do so, draw
-    // a circle (obstacleRevolution) around pivot and find the points
-    // (revolutionIntersections) on the circle that are obstacle.getRadius()
-    // pixels away from rotator.
-    BasicCircle obstacleRevolution = new BasicCircle(
-      pivot,
-      distance(pivot, obstacle.getCenter())
-    );
-
-    Vector[] rotatorShifts = new Vector[2];
-    rotatorShifts[0] = new Vector(
-      rotator.direction().perpendicular(),
+    double maxRotate = Kernel.segmentVsCircle(
+      rotator.getStart().getX(), rotator.getStart().getY(),
+      rotator.getEnd().getX(), rotator.getEnd().getY(),
+      pivot.getX(), pivot.getY(),
+      target.toDegrees(), clockwise,
+      obstacle.getCenter().getX(), obstacle.getCenter().getY(),
       obstacle.getRadius()
     );
-    rotatorShifts[1] = rotatorShifts[0].reverse();
-
-    List<Point> revolutionIntersections = new ArrayList<Point>();
-    for (Vector rotatorShift : rotatorShifts) {
-      Segment shifted = rotator.translation(rotatorShift);
-      Collections.addAll(
-        revolutionIntersections,
-        segmentIntersection(obstacleRevolution, shifted)
-      );
-    }
-
-    Direction obstacleDirection = new Direction(pivot, obstacle.getCenter());
-    for (Point revolutionIntersection : revolutionIntersections) {
-      Direction d = new Direction(pivot, revolutionIntersection);
-      double intersectionOffset =
-        obstacleDirection.toRadians() - d.toRadians();
-      Direction candidate =
-        origin.rotationByRadians(intersectionOffset);
-
-      maxRotate = closer(origin, clockwise, candidate, maxRotate);
-    }
-
-    return maxRotate;
+    return toDirection(maxRotate, target);
   }
 
   static Direction maxRotation(
@@ -855,26 +559,14 @@ abstract class Geometry {
     boolean clockwise,
     Point obstacle
   ) {
-    Direction maxRotate = target;
-    Direction origin = new Direction(pivot, rotator.getStart());
-
-    BasicCircle intersectionPath =
-      new BasicCircle(pivot, distance(pivot, obstacle));
-    Point[] intersectionOrigins = lineIntersection(intersectionPath, rotator);
-    for (Point intersectionOrigin : intersectionOrigins) {
-      if (!rotator.contains(intersectionOrigin)) {
-        continue;
-      }
-      Direction intersectionOriginDirection =
-        new Direction(pivot, intersectionOrigin);
-      double intersectionOffset =
-        intersectionOriginDirection.toRadians() - origin.toRadians();
-      Direction intersectionDirection = new Direction(pivot, obstacle);
-      Direction candidate =
-        intersectionDirection.rotationByRadians(-1 * intersectionOffset);
-      maxRotate = closer(origin, clockwise, candidate, maxRotate);
-    }
-    return maxRotate;
+    double maxRotate = Kernel.segmentVsPoint(
+      rotator.getStart().getX(), rotator.getStart().getY(),
+      rotator.getEnd().getX(), rotator.getEnd().getY(),
+      pivot.getX(), pivot.getY(),
+      target.toDegrees(), clockwise,
+      obstacle.getX(), obstacle.getY()
+    );
+    return toDirection(maxRotate, target);
   }
 
   static Direction maxRotation(
@@ -884,24 +576,14 @@ abstract class Geometry {
     boolean clockwise,
     Circle obstacle
   ) {
-    Direction maxRotate = target;
-    Direction origin = new Direction(pivot, rotator);
-    
-    BasicCircle path = new BasicCircle(pivot, distance(pivot, rotator));
-    Point[] intersections = intersection(path, new BasicCircle(obstacle));
-    if (intersections == null) {
-      return target;  // no collision
-    }
-    for (Point intersection : intersections) {
-      maxRotate = closer(
-        origin,
-        clockwise,
-        new Direction(pivot, intersection),
-        maxRotate
-      );
-    }
-
-    return maxRotate;
+    double maxRotate = Kernel.pointVsCircle(
+      rotator.getX(), rotator.getY(),
+      pivot.getX(), pivot.getY(),
+      target.toDegrees(), clockwise,
+      obstacle.getCenter().getX(), obstacle.getCenter().getY(),
+      obstacle.getRadius()
+    );
+    return toDirection(maxRotate, target);
   }
 
   static Direction maxRotation(
@@ -911,24 +593,14 @@ abstract class Geometry {
     boolean clockwise,
     Segment obstacle
   ) {
-    Direction maxRotate = target;
-    Direction origin = new Direction(pivot, rotator);
-
-    BasicCircle path = new BasicCircle(pivot, distance(rotator, pivot));
-    Point[] intersections = lineIntersection(path, obstacle);
-    for (int i = 0; i < intersections.length; i++) {
-      if (!obstacle.contains(intersections[i])) {
-        continue;
-      }
-      maxRotate = closer(
-        origin,
-        clockwise,
-        new Direction(pivot, intersections[i]),
-        maxRotate
-      );
-    }
-
-    return maxRotate;
+    double maxRotate = Kernel.pointVsSegment(
+      rotator.getX(), rotator.getY(),
+      pivot.getX(), pivot.getY(),
+      target.toDegrees(), clockwise,
+      obstacle.getStart().getX(), obstacle.getStart().getY(),
+      obstacle.getEnd().getX(), obstacle.getEnd().getY()
+    );
+    return toDirection(maxRotate, target);
   }
 
   static Direction closer(
@@ -949,17 +621,11 @@ abstract class Geometry {
     boolean clockwise,
     Direction target
   ) {
-    if (origin.equals(target)) {
-      return 0.0;
-    }
-    double distance = target.toDegrees() - origin.toDegrees();
-    if (distance < 0) {
-      distance += 360;
-    }
-    if (clockwise) {
-      distance = 360 - distance;
-    }
-    return distance;
+    return Kernel.rotationalDistance(
+      origin.toDegrees(),
+      clockwise,
+      target.toDegrees()
+    );
   }
 
   static boolean offscreen(Point point) {
@@ -975,28 +641,74 @@ abstract class Geometry {
 
   // Returns NaN if the code for the given shape pair hasn't been written yet.
   static double distance(Shape s, Shape t) {
-    if (touching(s, t)) {
+    if (s instanceof Circle && t instanceof Circle) {
+      if (touching((Circle) s, (Circle) t)) {
+        return 0.0;
+      }
+      return distance((Circle) s, (Circle) t);
+    }
+
+    // one GJK pass answers both "are they touching?" and "how far apart?"
+    Gjk gjk = GJK.get();
+    if (!gjk.compute(s, t)) {
+      return Double.NaN;
+    }
+    if (gjk.distance < TOLERANCE) {
       return 0.0;
     }
-    if (s instanceof Circle) {
-      if (t instanceof Circle) {
-        return distance((Circle) s, (Circle) t);
-      } else if (t instanceof ConvexPolygon) {
-        return distance((Circle) s, (ConvexPolygon) t);
-      } else {
+    return gjk.distance;
+  }
+
+  // If s moves by (dx, dy) while t stays put, returns the fraction of the way
+  // s gets before it touches t (0 if they're touching already), or -1 if they
+  // never touch. Returns NaN if the code for the given shape pair hasn't been
+  // written yet.
+  static double timeOfImpact(Shape s, double dx, double dy, Shape t) {
+    return timeOfImpact(s, 0, 0, dx, dy, t);
+  }
+
+  // Like timeOfImpact(Shape, double, double, Shape), but s starts out shifted
+  // by (fromX, fromY) from where it is now.
+  //
+  // Uses conservative advancement: the distance between two translating
+  // convex shapes shrinks no faster than the speed at which their closest
+  // points approach each other, so s can safely advance by distance / speed
+  // without passing through t. Repeat until they touch or s starts moving
+  // away.
+  static double timeOfImpact(
+    Shape s,
+    double fromX,
+    double fromY,
+    double dx,
+    double dy,
+    Shape t
+  ) {
+    Gjk gjk = GJK.get();
+    double fraction = 0;
+    for (int i = 0; i < MAX_ADVANCEMENTS; i++) {
+      if (!gjk.compute(s, fromX + fraction * dx, fromY + fraction * dy, t)) {
         return Double.NaN;
       }
-    } else if (s instanceof ConvexPolygon) {
-      if (t instanceof Circle) {
-        return distance((Circle) t, (ConvexPolygon) s);
-      } else if (t instanceof ConvexPolygon) {
-        return distance((ConvexPolygon) s, (ConvexPolygon) t);
-      } else {
-        return Double.NaN;
+      if (gjk.distance < TOLERANCE) {
+        return fraction;
       }
-    } else {
+      double closingSpeed = dx * gjk.directionX + dy * gjk.directionY;
+      if (closingSpeed <= 0) {
+        return -1;
+      }
+      // aim a little inside TOLERANCE so that the last step lands there
+      // instead of creeping up on it
+      fraction += (gjk.distance - (TOLERANCE - TOI_SLOP)) / closingSpeed;
+      if (fraction > 1) {
+        return -1;
+      }
+    }
+    // Out of steps while still closing in. That happens when s only just
+    // grazes t, so check whether they actually get close enough to touch.
+    if (!gjk.compute(s, fromX + fraction * dx, fromY + fraction * dy, t)) {
       return Double.NaN;
     }
+    return gjk.distance < TOLERANCE ? fraction : -1;
   }
 
   static double distance(Circle s, Circle t) {
@@ -1006,39 +718,10 @@ abstract class Geometry {
     return max(distance, 0);
   }
 
-  // assumes not touching
-  static double distance(Circle circle, ConvexPolygon poly) {
-    double centerDistance = Double.POSITIVE_INFINITY;
-    for (Segment side : poly.getSides()) {
-      centerDistance = min(
-        centerDistance,
-        segmentDistance(side, circle.getCenter())
-      );
-    }
-    double distance = centerDistance - circle.getRadius();
-    return distance;
-  }
-
-  // assumes not touching
-  static double distance(ConvexPolygon s, ConvexPolygon t) {
-    double distance = Double.POSITIVE_INFINITY;
-    for (Segment side : s.getSides()) {
-      for (Point corner : t.getCorners()) {
-        distance = min(distance, segmentDistance(side, corner));
-      }
-    }
-
-    for (Segment side : t.getSides()) {
-      for (Point corner : s.getCorners()) {
-        distance = min(distance, segmentDistance(side, corner));
-      }
-    }
-
-    return distance;
-  }
-
   static double distance(Shape shape, Point point) {
-    if (shape.contains(point)) {
+    // points outside the bounding circle can't be inside the shape
+    if (distance(shape.getCenter(), point) <= shape.boundingRadius() &&
+        shape.contains(point)) {
       return 0.0;
     }
 
@@ -1058,27 +741,26 @@ abstract class Geometry {
 
   // assumes point is outside poly
   static double distance(ConvexPolygon poly, Point point) {
-    double distance = Double.POSITIVE_INFINITY;
-    for (Segment side : poly.getSides()) {
-      distance = min(distance, segmentDistance(side, point));
-    }
-    return distance;
+    return Kernel.polygonDistance(
+      poly.cornerXs(), poly.cornerYs(),
+      point.getX(), point.getY()
+    );
   }
 
   static double segmentDistance(Segment seg, Point point) {
-    Segment perp = perpendicularThrough(seg, point);
-    if (seg.contains(perp.getEnd())) {
-      return perp.length();
-    } else {
-      return min(
-        distance(point, seg.getStart()),
-        distance(point, seg.getEnd())
-      );
-    }
+    return Kernel.segmentDistance(
+      seg.getStart().getX(), seg.getStart().getY(),
+      seg.getEnd().getX(), seg.getEnd().getY(),
+      point.getX(), point.getY()
+    );
   }
 
   static double lineDistance(Segment seg, Point point) {
-    return perpendicularThrough(seg, point).length();
+    return Kernel.lineDistance(
+      seg.getStart().getX(), seg.getStart().getY(),
+      seg.getEnd().getX(), seg.getEnd().getY(),
+      point.getX(), point.getY()
+    );
   }
 
   static double distance(Point s, Point t) {
@@ -1115,18 +797,3 @@ abstract class Geometry {
     return sqrt(sq(legA) + sq(legB));
   }
 }
-
-class BasicCircle {
-  Point center;
-  double radius;
-
-  BasicCircle(Point center, double radius) {
-    this.center = center;
-    this.radius = radius;
-  }
-
-  BasicCircle(Circle circle) {
-    this.center = circle.getCenter();
-    this.radius = circle.getRadius();
-  }
-}
@@ -0,0 +1,283 @@
+package shapes;
+
+// Finds the distance between two convex shapes, along with the closest point
+// on each shape, using the Gilbert-Johnson-Keerthi algorithm.
+//
+// GJK looks for the point of the Minkowski difference s - t that is closest
+// to the origin. It keeps a simplex (a point, segment or triangle) of points
+// in the difference and repeatedly replaces it with the part of it closest to
+// the origin plus the difference's farthest point in the direction of the
+// origin. Circles are handled by running GJK on their centers and then
+// subtracting their radii.
+//
+// A Gjk object holds the results of its most recent computation and can be
+// reused. s can be measured as if it were shifted by some offset, which lets
+// callers test positions along a sweep without moving the shape.
+class Gjk {
+  private static final int MAX_ITERATIONS = 32;
+
+  // results
+  double distance;
+  // closest point on s, and closest point on t
+  double closestSX, closestSY, closestTX, closestTY;
+  // unit vector pointing from s towards t, or (0, 0) if they overlap
+  double directionX, directionY;
+
+  // simplex vertices: points of s and t and their difference
+  private double[] sx = new double[3], sy = new double[3];
+  private double[] tx = new double[3], ty = new double[3];
+  private double[] wx = new double[3], wy = new double[3];
+  private double[] lambda = new double[3];
+  private int count;
+  // offset applied to s
+  private double shiftX, shiftY;
+
+  // Computes the distance between s and t. Returns false if the pair of
+  // shape types isn't supported.
+  boolean compute(Shape s, Shape t) {
+    return compute(s, 0, 0, t);
+  }
+
+  // Computes the distance between t and s shifted by (shiftX, shiftY).
+  boolean compute(Shape s, double shiftX, double shiftY, Shape t) {
+    if (!supported(s) || !supported(t)) {
+      return false;
+    }
+    this.shiftX = shiftX;
+    this.shiftY = shiftY;
+
+    count = 1;
+    addVertex(0, s, support(s, 1, 0), t, support(t, -1, 0));
+    lambda[0] = 1;
+
+    boolean overlapping = false;
+    for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+      solveSimplex();
+      if (count == 3) {
+        // the origin is inside the simplex
+        overlapping = true;
+        break;
+      }
+
+      double px = 0, py = 0;
+      for (int i = 0; i < count; i++) {
+        px += lambda[i] * wx[i];
+        py += lambda[i] * wy[i];
+      }
+      double lengthSquared = px * px + py * py;
+      if (lengthSquared < Geometry.EPSILON * Geometry.EPSILON) {
+        overlapping = true;
+        break;
+      }
+
+      // search toward the origin for a point of s - t
+      int sIndex = support(s, -px, -py);
+      int tIndex = support(t, px, py);
+      double newWX = x(s, sIndex) + shiftX - x(t, tIndex);
+      double newWY = y(s, sIndex) + shiftY - y(t, tIndex);
+
+      // stop if the new point isn't any closer to the origin
+      double progress = lengthSquared - (newWX * px + newWY * py);
+      if (progress <= 1e-10 * lengthSquared || isVertex(newWX, newWY)) {
+        break;
+      }
+
+      addVertex(count, s, sIndex, t, tIndex);
+      count++;
+    }
+
+    closestSX = closestSY = closestTX = closestTY = 0;
+    for (int i = 0; i < count; i++) {
+      closestSX += lambda[i] * sx[i];
+      closestSY += lambda[i] * sy[i];
+      closestTX += lambda[i] * tx[i];
+      closestTY += lambda[i] * ty[i];
+    }
+
+    double coreDistance = overlapping ? 0 :
+      Geometry.hypoteneuse(closestTX - closestSX, closestTY - closestSY);
+    double radii = radius(s) + radius(t);
+    if (coreDistance <= radii || coreDistance < Geometry.EPSILON) {
+      distance = 0;
+      directionX = directionY = 0;
+      return true;
+    }
+
+    directionX = (closestTX - closestSX) / coreDistance;
+    directionY = (closestTY - closestSY) / coreDistance;
+    closestSX += radius(s) * directionX;
+    closestSY += radius(s) * directionY;
+    closestTX -= radius(t) * directionX;
+    closestTY -= radius(t) * directionY;
+    distance = coreDistance - radii;
+    return true;
+  }
+
+  private static boolean supported(Shape shape) {
+    return shape instanceof Circle || shape instanceof ConvexPolygon;
+  }
+
+  private static double radius(Shape shape) {
+    if (shape instanceof Circle) {
+      return ((Circle) shape).getRadius();
+    }
+    return 0;
+  }
+
+  // Returns the index of the corner of shape farthest in the direction
+  // (dx, dy), or -1 if shape is a circle, whose core is its center.
+  private static int support(Shape shape, double dx, double dy) {
+    if (shape instanceof Circle) {
+      return -1;
+    }
+    ConvexPolygon poly = (ConvexPolygon) shape;
+    double[] cornerX = poly.cornerXs();
+    double[] cornerY = poly.cornerYs();
+    int best = 0;
+    double bestDot = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < cornerX.length; i++) {
+      double dot = cornerX[i] * dx + cornerY[i] * dy;
+      if (dot > bestDot) {
+        bestDot = dot;
+        best = i;
+      }
+    }
+    return best;
+  }
+
+  private static double x(Shape shape, int index) {
+    if (index < 0) {
+      return shape.getCenter().getX();
+    }
+    return ((ConvexPolygon) shape).cornerXs()[index];
+  }
+
+  private static double y(Shape shape, int index) {
+    if (index < 0) {
+      return shape.getCenter().getY();
+    }
+    return ((ConvexPolygon) shape).cornerYs()[index];
+  }
+
+  private void addVertex(int i, Shape s, int sIndex, Shape t, int tIndex) {
+    sx[i] = x(s, sIndex) + shiftX;
+    sy[i] = y(s, sIndex) + shiftY;
+    tx[i] = x(t, tIndex);
+    ty[i] = y(t, tIndex);
+    wx[i] = sx[i] - tx[i];
+    wy[i] = sy[i] - ty[i];
+  }
+
+  private boolean isVertex(double x, double y) {
+    for (int i = 0; i < count; i++) {
+      if (wx[i] == x && wy[i] == y) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void copyVertex(int from, int to) {
+    sx[to] = sx[from];
+    sy[to] = sy[from];
+    tx[to] = tx[from];
+    ty[to] = ty[from];
+    wx[to] = wx[from];
+    wy[to] = wy[from];
+  }
+
+  // Reduces the simplex to the vertices nearest the origin and sets lambda to
+  // the barycentric coordinates of the simplex's closest point to the origin.
+  private void solveSimplex() {
+    if (count == 1) {
+      lambda[0] = 1;
+    } else if (count == 2) {
+      solveSegment();
+    } else {
+      solveTriangle();
+    }
+  }
+
+  private void solveSegment() {
+    double ex = wx[1] - wx[0];
+    double ey = wy[1] - wy[0];
+    double d1 = wx[1] * ex + wy[1] * ey;     // weight of vertex 0
+    double d2 = -(wx[0] * ex + wy[0] * ey);  // weight of vertex 1
+
+    if (d2 <= 0) {
+      lambda[0] = 1;
+      count = 1;
+    } else if (d1 <= 0) {
+      copyVertex(1, 0);
+      lambda[0] = 1;
+      count = 1;
+    } else {
+      lambda[0] = d1 / (d1 + d2);
+      lambda[1] = d2 / (d1 + d2);
+    }
+  }
+
+  private void solveTriangle() {
+    double e12x = wx[1] - wx[0], e12y = wy[1] - wy[0];
+    double d12v1 = wx[1] * e12x + wy[1] * e12y;
+    double d12v2 = -(wx[0] * e12x + wy[0] * e12y);
+
+    double e13x = wx[2] - wx[0], e13y = wy[2] - wy[0];
+    double d13v1 = wx[2] * e13x + wy[2] * e13y;
+    double d13v3 = -(wx[0] * e13x + wy[0] * e13y);
+
+    double e23x = wx[2] - wx[1], e23y = wy[2] - wy[1];
+    double d23v2 = wx[2] * e23x + wy[2] * e23y;
+    double d23v3 = -(wx[1] * e23x + wy[1] * e23y);
+
+    double n = e12x * e13y - e12y * e13x;
+    double d123v1 = n * (wx[1] * wy[2] - wy[1] * wx[2]);
+    double d123v2 = n * (wx[2] * wy[0] - wy[2] * wx[0]);
+    double d123v3 = n * (wx[0] * wy[1] - wy[0] * wx[1]);
+
+    if (d12v2 <= 0 && d13v3 <= 0) {
+      // vertex 1
+      lambda[0] = 1;
+      count = 1;
+    } else if (d12v1 > 0 && d12v2 > 0 && d123v3 <= 0) {
+      // edge 12
+      lambda[0] = d12v1 / (d12v1 + d12v2);
+      lambda[1] = d12v2 / (d12v1 + d12v2);
+      count = 2;
+    } else if (d13v1 > 0 && d13v3 > 0 && d123v2 <= 0) {
+      // edge 13
+      lambda[0] = d13v1 / (d13v1 + d13v3);
+      lambda[1] = d13v3 / (d13v1 + d13v3);
+      copyVertex(2, 1);
+      count = 2;
+    } else if (d12v1 <= 0 && d23v3 <= 0) {
+      // vertex 2
+      copyVertex(1, 0);
+      lambda[0] = 1;
+      count = 1;
+    } else if (d13v1 <= 0 && d23v2 <= 0) {
+      // vertex 3
+      copyVertex(2, 0);
+      lambda[0] = 1;
+      count = 1;
+    } else if (d23v2 > 0 && d23v3 > 0 && d123v1 <= 0) {
+      // edge 23
+      lambda[0] = d23v2 / (d23v2 + d23v3);
+      lambda[1] = d23v3 / (d23v2 + d23v3);
+      copyVertex(1, 0);
+      copyVertex(2, 1);
+      count = 2;
+    } else {
+      // the origin is inside the triangle (or on it, if it's flat)
+      double total = d123v1 + d123v2 + d123v3;
+      if (total == 0) {
+        lambda[0] = lambda[1] = lambda[2] = 1.0 / 3.0;
+      } else {
+        lambda[0] = d123v1 / total;
+        lambda[1] = d123v2 / total;
+        lambda[2] = d123v3 / total;
+      }
+      count = 3;
+    }
+  }
+}
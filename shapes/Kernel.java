@@ -0,0 +1,789 @@
+package shapes;
+
+import static java.lang.Math.*;
+
+// The collision routines behind Geometry, written against raw coordinates so
+// that they don't allocate any Points, Vectors, Segments or Directions.
+// Geometry's methods that take those objects unpack them and call in here.
+//
+// Conventions:
+// - Polygons are given as arrays of corner coordinates, in order.
+// - Directions are given in degrees, normalized the same way Direction
+//   normalizes them, so results match the object-based code.
+// - Movement routines take the mover's path from (x0, y0) to (x1, y1), and
+//   record the shortest movement found so far in best = {x, y}. A candidate
+//   only replaces best if it lies on the path and is closer to its start.
+// - Rotation routines return the direction in degrees the rotator can turn
+//   to before hitting the obstacle.
+abstract class Kernel {
+  private static final double EPSILON = Geometry.EPSILON;
+  private static final double TOLERANCE = Geometry.TOLERANCE;
+
+  /* Points, lines and segments */
+
+  static double distance(double ax, double ay, double bx, double by) {
+    return sqrt((ax - bx) * (ax - bx) + (ay - by) * (ay - by));
+  }
+
+  static double cross(double ax, double ay, double bx, double by) {
+    return ax * by - ay * bx;
+  }
+
+  // Whether (px, py) lies on the segment from a to b, judged the same way as
+  // Segment.contains().
+  static boolean onSegment(
+    double ax, double ay,
+    double bx, double by,
+    double px, double py
+  ) {
+    double circuit = distance(ax, ay, px, py) + distance(px, py, bx, by);
+    return abs(circuit - distance(ax, ay, bx, by)) < EPSILON;
+  }
+
+  // Returns how far along the line from a to b the foot of the perpendicular
+  // from (px, py) lands, as a multiple of b - a. Treats segments shorter
+  // than EPSILON as the point a.
+  static double project(
+    double ax, double ay,
+    double bx, double by,
+    double px, double py
+  ) {
+    double dx = bx - ax;
+    double dy = by - ay;
+    if (distance(ax, ay, bx, by) < EPSILON) {
+      return 0;
+    }
+    return ((px - ax) * dx + (py - ay) * dy) / (dx * dx + dy * dy);
+  }
+
+  // distance from (px, py) to the line through a and b
+  static double lineDistance(
+    double ax, double ay,
+    double bx, double by,
+    double px, double py
+  ) {
+    double t = project(ax, ay, bx, by, px, py);
+    return distance(px, py, ax + t * (bx - ax), ay + t * (by - ay));
+  }
+
+  // distance from (px, py) to the segment from a to b
+  static double segmentDistance(
+    double ax, double ay,
+    double bx, double by,
+    double px, double py
+  ) {
+    double t = max(0, min(1, project(ax, ay, bx, by, px, py)));
+    return distance(px, py, ax + t * (bx - ax), ay + t * (by - ay));
+  }
+
+  // distance between the segment from a to b and the segment from c to d
+  static double segmentsDistance(
+    double ax, double ay, double bx, double by,
+    double cx, double cy, double dx, double dy
+  ) {
+    if (segmentsIntersect(ax, ay, bx, by, cx, cy, dx, dy)) {
+      return 0;
+    }
+    return min(
+      min(
+        segmentDistance(ax, ay, bx, by, cx, cy),
+        segmentDistance(ax, ay, bx, by, dx, dy)
+      ),
+      min(
+        segmentDistance(cx, cy, dx, dy, ax, ay),
+        segmentDistance(cx, cy, dx, dy, bx, by)
+      )
+    );
+  }
+
+  // Returns how far along the line through a with direction (vx, vy) it
+  // meets the line through c with direction (wx, wy), as a multiple of
+  // (vx, vy). Returns NaN if the lines are parallel, that is, if the cross
+  // product of their directions is within EPSILON of zero.
+  static double intersect(
+    double ax, double ay, double vx, double vy,
+    double cx, double cy, double wx, double wy
+  ) {
+    double denominator = cross(vx, vy, wx, wy);
+    if (abs(denominator) < EPSILON) {
+      return Double.NaN;
+    }
+    return cross(cx - ax, cy - ay, wx, wy) / denominator;
+  }
+
+  // Returns how far from the foot of the perpendicular from the circle's
+  // center the line through a and b crosses the circle, in pixels, or NaN if
+  // it misses. The crossings are at foot +/- that distance along the line.
+  private static double halfChord(
+    double ax, double ay,
+    double bx, double by,
+    double ox, double oy, double r
+  ) {
+    double perp = lineDistance(ax, ay, bx, by, ox, oy);
+    if (perp > r) {
+      return Double.NaN;
+    }
+    return sqrt(r * r - perp * perp);
+  }
+
+  /* Touching */
+
+  static boolean circleTouchesSegment(
+    double ox, double oy, double r,
+    double ax, double ay, double bx, double by
+  ) {
+    double t = project(ax, ay, bx, by, ox, oy);
+    double fx = ax + t * (bx - ax);
+    double fy = ay + t * (by - ay);
+    return distance(ox, oy, fx, fy) < r + TOLERANCE &&
+      onSegment(ax, ay, bx, by, fx, fy);
+  }
+
+  static boolean segmentTouchesPoint(
+    double ax, double ay, double bx, double by,
+    double px, double py
+  ) {
+    return circleTouchesSegment(px, py, 0, ax, ay, bx, by);
+  }
+
+  static boolean segmentsIntersect(
+    double ax, double ay, double bx, double by,
+    double cx, double cy, double dx, double dy
+  ) {
+    double t = intersect(ax, ay, bx - ax, by - ay, cx, cy, dx - cx, dy - cy);
+    if (Double.isNaN(t)) {
+      return false;
+    }
+    double x = ax + t * (bx - ax);
+    double y = ay + t * (by - ay);
+    return onSegment(ax, ay, bx, by, x, y) && onSegment(cx, cy, dx, dy, x, y);
+  }
+
+  static boolean polygonTouchesSegment(
+    double[] px, double[] py,
+    double ax, double ay, double bx, double by
+  ) {
+    int n = px.length;
+    for (int i = 0; i < n; i++) {
+      int j = (i + 1) % n;
+      if (segmentsIntersect(px[i], py[i], px[j], py[j], ax, ay, bx, by)) {
+        return true;
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      if (segmentTouchesPoint(ax, ay, bx, by, px[i], py[i])) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // the point is inside if all cross products have the same sign
+  static boolean polygonContains(
+    double[] px, double[] py,
+    double x, double y
+  ) {
+    int n = px.length;
+    boolean positive = false;
+    for (int i = 0; i < n; i++) {
+      int j = (i + 1) % n;
+      boolean pos = cross(
+        px[j] - px[i], py[j] - py[i],
+        x - px[i], y - py[i]
+      ) > 0;
+      if (i == 0) {
+        positive = pos;
+      } else if (pos != positive) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // shortest distance from the point to one of the polygon's sides
+  static double polygonDistance(
+    double[] px, double[] py,
+    double x, double y
+  ) {
+    int n = px.length;
+    double distance = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < n; i++) {
+      int j = (i + 1) % n;
+      distance =
+        min(distance, segmentDistance(px[i], py[i], px[j], py[j], x, y));
+    }
+    return distance;
+  }
+
+  /* Movement */
+
+  private static void consider(
+    double[] best,
+    double x, double y,
+    double x0, double y0, double x1, double y1
+  ) {
+    if (!onSegment(x0, y0, x1, y1, x, y)) {
+      return;
+    }
+    if (distance(x, y, x0, y0) < distance(best[0], best[1], x0, y0)) {
+      best[0] = x;
+      best[1] = y;
+    }
+  }
+
+  // x-component of the unit vector along the path (pointing right for a
+  // path of length zero, as Direction does)
+  private static double unitX(double x0, double y0, double x1, double y1) {
+    double length = distance(x0, y0, x1, y1);
+    return length == 0 ? 1 : (x1 - x0) / length;
+  }
+
+  private static double unitY(double x0, double y0, double x1, double y1) {
+    double length = distance(x0, y0, x1, y1);
+    return length == 0 ? 0 : (y1 - y0) / length;
+  }
+
+  static void circleVsCircle(
+    double x0, double y0, double x1, double y1, double r,
+    double ox, double oy, double obstacleRadius,
+    double[] best
+  ) {
+    // closest is the point on the path's line closest to the obstacle
+    double t = project(x0, y0, x1, y1, ox, oy);
+    double closestX = x0 + t * (x1 - x0);
+    double closestY = y0 + t * (y1 - y0);
+    double distanceToPath = distance(ox, oy, closestX, closestY);
+    double distanceBetweenCenters = r + obstacleRadius;
+    if (distanceToPath > distanceBetweenCenters) {
+      return;
+    }
+
+    double back = sqrt(
+      distanceBetweenCenters * distanceBetweenCenters -
+      distanceToPath * distanceToPath
+    );
+    consider(
+      best,
+      closestX - back * unitX(x0, y0, x1, y1),
+      closestY - back * unitY(x0, y0, x1, y1),
+      x0, y0, x1, y1
+    );
+  }
+
+  static void circleVsSegment(
+    double x0, double y0, double x1, double y1, double r,
+    double ax, double ay, double bx, double by,
+    double[] best
+  ) {
+    double px = x1 - x0, py = y1 - y0;
+    double t = intersect(x0, y0, px, py, ax, ay, bx - ax, by - ay);
+    if (Double.isNaN(t)) {
+      return;
+    }
+    double ix = x0 + t * px;
+    double iy = y0 + t * py;
+
+    // sine of the angle between the path and the segment
+    double sin = abs(cross(
+      unitX(x0, y0, x1, y1), unitY(x0, y0, x1, y1),
+      unitX(ax, ay, bx, by), unitY(ax, ay, bx, by)
+    ));
+    double hypoteneuse = r / sin;
+    double cx = ix - hypoteneuse * unitX(x0, y0, x1, y1);
+    double cy = iy - hypoteneuse * unitY(x0, y0, x1, y1);
+
+    if (distance(x0, y0, cx, cy) > distance(x0, y0, ix, iy)) {
+      // obstacle is facing the wrong way for a collision to occur
+      return;
+    }
+
+    double s = project(ax, ay, bx, by, cx, cy);
+    if (!onSegment(ax, ay, bx, by, ax + s * (bx - ax), ay + s * (by - ay))) {
+      return;
+    }
+    consider(best, cx, cy, x0, y0, x1, y1);
+  }
+
+  static void circleVsPolygon(
+    double x0, double y0, double x1, double y1, double r,
+    double[] ox, double[] oy,
+    double[] best
+  ) {
+    int n = ox.length;
+    for (int i = 0; i < n; i++) {
+      double t = project(x0, y0, x1, y1, ox[i], oy[i]);
+      double closestX = x0 + t * (x1 - x0);
+      double closestY = y0 + t * (y1 - y0);
+      double perpDistance = distance(ox[i], oy[i], closestX, closestY);
+      if (perpDistance > r) {
+        continue;
+      }
+      double back = sqrt(r * r - perpDistance * perpDistance);
+      consider(
+        best,
+        closestX - back * unitX(x0, y0, x1, y1),
+        closestY - back * unitY(x0, y0, x1, y1),
+        x0, y0, x1, y1
+      );
+    }
+
+    for (int i = 0; i < n; i++) {
+      int j = (i + 1) % n;
+      circleVsSegment(x0, y0, x1, y1, r, ox[i], oy[i], ox[j], oy[j], best);
+    }
+  }
+
+  static void polygonVsSegment(
+    double x0, double y0, double x1, double y1,
+    double[] mx, double[] my,
+    double ax, double ay, double bx, double by,
+    double[] best
+  ) {
+    double px = x1 - x0, py = y1 - y0;
+    for (int i = 0; i < mx.length; i++) {
+      // where this corner's path crosses the obstacle
+      double t = intersect(ax, ay, bx - ax, by - ay, mx[i], my[i], px, py);
+      if (Double.isNaN(t)) {
+        continue;
+      }
+      double ix = ax + t * (bx - ax);
+      double iy = ay + t * (by - ay);
+      if (!onSegment(ax, ay, bx, by, ix, iy)) {
+        continue;
+      }
+      consider(
+        best,
+        ix - (mx[i] - x0),
+        iy - (my[i] - y0),
+        x0, y0, x1, y1
+      );
+    }
+  }
+
+  static void polygonVsPolygon(
+    double x0, double y0, double x1, double y1,
+    double[] mx, double[] my,
+    double[] ox, double[] oy,
+    double[] best
+  ) {
+    // Two cases: corner hits side, side hits corner
+    int n = ox.length;
+    for (int i = 0; i < n; i++) {
+      int j = (i + 1) % n;
+      polygonVsSegment(
+        x0, y0, x1, y1, mx, my, ox[i], oy[i], ox[j], oy[j], best
+      );
+    }
+
+    double px = x1 - x0, py = y1 - y0;
+    int m = mx.length;
+    for (int k = 0; k < n; k++) {
+      for (int i = 0; i < m; i++) {
+        int j = (i + 1) % m;
+        // where the line through the obstacle's corner, parallel to the
+        // path, crosses this side
+        double t = intersect(
+          mx[i], my[i], mx[j] - mx[i], my[j] - my[i],
+          ox[k], oy[k], px, py
+        );
+        if (Double.isNaN(t)) {
+          continue;
+        }
+        double ix = mx[i] + t * (mx[j] - mx[i]);
+        double iy = my[i] + t * (my[j] - my[i]);
+        if (!onSegment(mx[i], my[i], mx[j], my[j], ix, iy)) {
+          continue;
+        }
+        consider(best, ox[k] - (ix - x0), oy[k] - (iy - y0), x0, y0, x1, y1);
+      }
+    }
+  }
+
+  static void polygonVsCircle(
+    double x0, double y0, double x1, double y1,
+    double[] mx, double[] my,
+    double ox, double oy, double r,
+    double[] best
+  ) {
+    double px = x1 - x0, py = y1 - y0;
+    double ux = unitX(x0, y0, x1, y1), uy = unitY(x0, y0, x1, y1);
+    int n = mx.length;
+
+    // check corner collisions
+    for (int i = 0; i < n; i++) {
+      double h = halfChord(mx[i], my[i], mx[i] + px, my[i] + py, ox, oy, r);
+      if (Double.isNaN(h)) {
+        continue;
+      }
+      // of the two crossings, the one closer to the corner's starting point
+      double t = project(mx[i], my[i], mx[i] + px, my[i] + py, ox, oy);
+      double along = t * distance(0, 0, px, py);
+      along = abs(along - h) < abs(along + h) ? along - h : along + h;
+      consider(best, x0 + along * ux, y0 + along * uy, x0, y0, x1, y1);
+    }
+
+    // check side collisions
+    for (int i = 0; i < n; i++) {
+      int j = (i + 1) % n;
+      // the point on the circle nearest this side's line
+      double t = project(mx[i], my[i], mx[j], my[j], ox, oy);
+      double fx = mx[i] + t * (mx[j] - mx[i]) - ox;
+      double fy = my[i] + t * (my[j] - my[i]) - oy;
+      double length = distance(0, 0, fx, fy);
+      double cx = ox + (length == 0 ? r : r * fx / length);
+      double cy = oy + (length == 0 ? 0 : r * fy / length);
+
+      double s = intersect(
+        mx[i], my[i], mx[j] - mx[i], my[j] - my[i],
+        cx, cy, px, py
+      );
+      if (Double.isNaN(s)) {
+        continue;
+      }
+      double ix = mx[i] + s * (mx[j] - mx[i]);
+      double iy = my[i] + s * (my[j] - my[i]);
+      if (!onSegment(mx[i], my[i], mx[j], my[j], ix, iy)) {
+        continue;
+      }
+      consider(best, cx - (ix - x0), cy - (iy - y0), x0, y0, x1, y1);
+    }
+  }
+
+  // Backs best up a little along the path so that the mover doesn't end up
+  // exactly touching the obstacle, without backing up past the start.
+  static void insertGap(
+    double x0, double y0, double x1, double y1,
+    double[] best
+  ) {
+    double x = best[0] - TOLERANCE / 4.0 * unitX(x0, y0, x1, y1);
+    double y = best[1] - TOLERANCE / 4.0 * unitY(x0, y0, x1, y1);
+    if (onSegment(x0, y0, x1, y1, x, y)) {
+      best[0] = x;
+      best[1] = y;
+    } else {
+      best[0] = x0;
+      best[1] = y0;
+    }
+  }
+
+  /* Rotation */
+
+  static double normalize(double degrees) {
+    degrees %= 360.0;
+    if (degrees < 0.0) {
+      degrees += 360.0;
+    }
+    return degrees;
+  }
+
+  // the direction from a to b
+  static double direction(double ax, double ay, double bx, double by) {
+    return normalize(atan2(by - ay, bx - ax) / PI * 180.0);
+  }
+
+  static double toRadians(double degrees) {
+    return degrees / 180.0 * PI;
+  }
+
+  static double rotate(double degrees, double radians) {
+    return normalize((toRadians(degrees) + radians) / PI * 180.0);
+  }
+
+  static double rotationalDistance(
+    double origin,
+    boolean clockwise,
+    double target
+  ) {
+    if (abs(origin - target) < EPSILON) {
+      return 0.0;
+    }
+    double distance = target - origin;
+    if (distance < 0) {
+      distance += 360;
+    }
+    if (clockwise) {
+      distance = 360 - distance;
+    }
+    return distance;
+  }
+
+  static double closer(double origin, boolean clockwise, double s, double t) {
+    if (rotationalDistance(origin, clockwise, s) <
+        rotationalDistance(origin, clockwise, t)) {
+      return s;
+    }
+    return t;
+  }
+
+  // Turning the point (rx, ry) about the pivot (px, py) towards target,
+  // where does it first hit the segment from a to b?
+  static double pointVsSegment(
+    double rx, double ry, double px, double py,
+    double target, boolean clockwise,
+    double ax, double ay, double bx, double by
+  ) {
+    double maxRotate = target;
+    double origin = direction(px, py, rx, ry);
+
+    double h = halfChord(ax, ay, bx, by, px, py, distance(rx, ry, px, py));
+    if (Double.isNaN(h)) {
+      return maxRotate;
+    }
+    double t = project(ax, ay, bx, by, px, py);
+    double fx = ax + t * (bx - ax), fy = ay + t * (by - ay);
+    double ux = unitX(ax, ay, bx, by), uy = unitY(ax, ay, bx, by);
+    for (int sign = -1; sign <= 1; sign += 2) {
+      double ix = fx + sign * h * ux;
+      double iy = fy + sign * h * uy;
+      if (!onSegment(ax, ay, bx, by, ix, iy)) {
+        continue;
+      }
+      maxRotate =
+        closer(origin, clockwise, direction(px, py, ix, iy), maxRotate);
+    }
+    return maxRotate;
+  }
+
+  // Turning the point (rx, ry) about the pivot (px, py) towards target,
+  // where does it first hit the circle?
+  static double pointVsCircle(
+    double rx, double ry, double px, double py,
+    double target, boolean clockwise,
+    double ox, double oy, double r
+  ) {
+    double maxRotate = target;
+    double origin = direction(px, py, rx, ry);
+
+    // where the circle the point travels along crosses the obstacle
+    double pathRadius = distance(px, py, rx, ry);
+    double d = distance(px, py, ox, oy);
+    if (d > pathRadius + r) {
+      return target;  // no collision
+    }
+    // the angle at the obstacle's center between the line to the pivot and
+    // the radius to a crossing (law of cosines)
+    double theta =
+      acos((-pathRadius * pathRadius + r * r + d * d) / (2 * r * d));
+    double betweenCenters = direction(ox, oy, px, py);
+    for (int sign = -1; sign <= 1; sign += 2) {
+      double radians = toRadians(rotate(betweenCenters, sign * theta));
+      double ix = ox + r * cos(radians);
+      double iy = oy + r * sin(radians);
+      maxRotate =
+        closer(origin, clockwise, direction(px, py, ix, iy), maxRotate);
+    }
+    return maxRotate;
+  }
+
+  // Turning the segment from a to b about the pivot (px, py) towards
+  // target (which is the direction of a from the pivot), where does it
+  // first hit the circle? Returns the direction of a at that point.
+  static double segmentVsCircle(
+    double ax, double ay, double bx, double by, double px, double py,
+    double target, boolean clockwise,
+    double ox, double oy, double r
+  ) {
+    double maxRotate = target;
+    double origin = direction(px, py, ax, ay);
+
+    // Instead of rotating the segment, imagine revolving the obstacle around
+    // the pivot and finding the points where it is tangent to the segment.
+    // Those are where the circle the obstacle's center travels along crosses
+    // the segment shifted r pixels to either side.
+    double revolution = distance(px, py, ox, oy);
+    double obstacleDirection = direction(px, py, ox, oy);
+    double shiftRadians = toRadians(normalize(direction(ax, ay, bx, by) + 90));
+    double shiftX = r * cos(shiftRadians);
+    double shiftY = r * sin(shiftRadians);
+    for (int side = -1; side <= 1; side += 2) {
+      double sax = ax + side * shiftX, say = ay + side * shiftY;
+      double sbx = bx + side * shiftX, sby = by + side * shiftY;
+      double h = halfChord(sax, say, sbx, sby, px, py, revolution);
+      if (Double.isNaN(h)) {
+        continue;
+      }
+      double t = project(sax, say, sbx, sby, px, py);
+      double fx = sax + t * (sbx - sax), fy = say + t * (sby - say);
+      double ux = unitX(sax, say, sbx, sby), uy = unitY(sax, say, sbx, sby);
+      for (int sign = -1; sign <= 1; sign += 2) {
+        double ix = fx + sign * h * ux;
+        double iy = fy + sign * h * uy;
+        if (!onSegment(sax, say, sbx, sby, ix, iy)) {
+          continue;
+        }
+        double offset =
+          toRadians(obstacleDirection) - toRadians(direction(px, py, ix, iy));
+        maxRotate =
+          closer(origin, clockwise, rotate(origin, offset), maxRotate);
+      }
+    }
+    return maxRotate;
+  }
+
+  // Turning the segment from a to b about the pivot (px, py) towards
+  // target (which is the direction of a from the pivot), where does it
+  // first hit the point (qx, qy)? Returns the direction of a at that point.
+  static double segmentVsPoint(
+    double ax, double ay, double bx, double by, double px, double py,
+    double target, boolean clockwise,
+    double qx, double qy
+  ) {
+    double maxRotate = target;
+    double origin = direction(px, py, ax, ay);
+
+    double h = halfChord(ax, ay, bx, by, px, py, distance(px, py, qx, qy));
+    if (Double.isNaN(h)) {
+      return maxRotate;
+    }
+    double t = project(ax, ay, bx, by, px, py);
+    double fx = ax + t * (bx - ax), fy = ay + t * (by - ay);
+    double ux = unitX(ax, ay, bx, by), uy = unitY(ax, ay, bx, by);
+    double obstacleDirection = direction(px, py, qx, qy);
+    for (int sign = -1; sign <= 1; sign += 2) {
+      double ix = fx + sign * h * ux;
+      double iy = fy + sign * h * uy;
+      if (!onSegment(ax, ay, bx, by, ix, iy)) {
+        continue;
+      }
+      double offset =
+        toRadians(direction(px, py, ix, iy)) - toRadians(origin);
+      maxRotate = closer(
+        origin,
+        clockwise,
+        rotate(obstacleDirection, -1 * offset),
+        maxRotate
+      );
+    }
+    return maxRotate;
+  }
+
+  // The polygon routines below turn a polygon with the given corners about
+  // (cx, cy) from direction origin towards target, and return how far it
+  // can turn.
+
+  static double polygonVsSegment(
+    double[] mx, double[] my, double cx, double cy,
+    double origin, double target, boolean clockwise,
+    double ax, double ay, double bx, double by
+  ) {
+    double maxRotate = target;
+    for (int i = 0; i < mx.length; i++) {
+      double offset =
+        toRadians(direction(cx, cy, mx[i], my[i])) - toRadians(origin);
+      double candidate = pointVsSegment(
+        mx[i], my[i], cx, cy,
+        rotate(target, offset), clockwise,
+        ax, ay, bx, by
+      );
+      maxRotate = closer(
+        origin,
+        clockwise,
+        rotate(candidate, -1 * offset),
+        maxRotate
+      );
+    }
+    return maxRotate;
+  }
+
+  static double polygonVsCircle(
+    double[] mx, double[] my, double cx, double cy,
+    double origin, double target, boolean clockwise,
+    double ox, double oy, double r
+  ) {
+    double maxRotate = target;
+    int n = mx.length;
+    for (int i = 0; i < n; i++) {
+      double offset =
+        toRadians(direction(cx, cy, mx[i], my[i])) - toRadians(origin);
+      double candidate = pointVsCircle(
+        mx[i], my[i], cx, cy,
+        rotate(target, offset), clockwise,
+        ox, oy, r
+      );
+      maxRotate = closer(
+        origin,
+        clockwise,
+        rotate(candidate, -1 * offset),
+        maxRotate
+      );
+    }
+
+    for (int i = 0; i < n; i++) {
+      int j = (i + 1) % n;
+      double offset =
+        toRadians(direction(cx, cy, mx[i], my[i])) - toRadians(origin);
+      double candidate = segmentVsCircle(
+        mx[i], my[i], mx[j], my[j], cx, cy,
+        rotate(target, offset), clockwise,
+        ox, oy, r
+      );
+      maxRotate = closer(
+        origin,
+        clockwise,
+        rotate(candidate, -1 * offset),
+        maxRotate
+      );
+    }
+    return maxRotate;
+  }
+
+  static double polygonVsPolygon(
+    double[] mx, double[] my, double cx, double cy,
+    double origin, double target, boolean clockwise,
+    double[] ox, double[] oy
+  ) {
+    double maxRotate = target;
+    int m = mx.length;
+    int n = ox.length;
+    for (int i = 0; i < m; i++) {
+      double offset =
+        toRadians(direction(cx, cy, mx[i], my[i])) - toRadians(origin);
+      double cornerTarget = rotate(target, offset);
+      for (int k = 0; k < n; k++) {
+        int l = (k + 1) % n;
+        double candidate = pointVsSegment(
+          mx[i], my[i], cx, cy,
+          cornerTarget, clockwise,
+          ox[k], oy[k], ox[l], oy[l]
+        );
+        maxRotate = closer(
+          origin,
+          clockwise,
+          rotate(candidate, -1 * offset),
+          maxRotate
+        );
+      }
+    }
+
+    for (int i = 0; i < m; i++) {
+      int j = (i + 1) % m;
+      double offset =
+        toRadians(direction(cx, cy, mx[i], my[i])) - toRadians(origin);
+      double sideTarget = rotate(target, offset);
+      for (int k = 0; k < n; k++) {
+        double candidate = segmentVsPoint(
+          mx[i], my[i], mx[j], my[j], cx, cy,
+          sideTarget, clockwise,
+          ox[k], oy[k]
+        );
+        maxRotate = closer(
+          origin,
+          clockwise,
+          rotate(candidate, -1 * offset),
+          maxRotate
+        );
+      }
+    }
+    return maxRotate;
+  }
+
+  // Backs maxRotate up a little towards origin, without backing up past it.
+  static double insertGap(double origin, boolean clockwise, double maxRotate) {
+    double gapped = normalize(maxRotate + (clockwise ? 0.05 : -0.05));
+    if (rotationalDistance(origin, clockwise, gapped) <
+        rotationalDistance(origin, clockwise, maxRotate)) {
+      return gapped;
+    }
+    return origin;
+  }
+}
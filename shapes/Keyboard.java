@@ -14,15 +14,17 @@ import java.util.concurrent.*;
  * <code>shape.move(Keyboard.direction(), 10);</code>
  */
 public class Keyboard extends KeyAdapter {
-  private static Set<Integer> keysPressed;
-  private static Integer mostRecentKeyPressed;
+  private final Set<Integer> keysPressed =
+    Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+  private volatile Integer mostRecentKeyPressed;
   private static boolean printKeyPresses = false;
 
   Keyboard() {
-    if (keysPressed == null) {
-      keysPressed =
-        Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
-    }
+  }
+
+  // the keys pressed in the current world
+  private static Set<Integer> pressed() {
+    return World.current().keyboard.keysPressed;
   }
 
   /**
@@ -50,7 +52,7 @@ public class Keyboard extends KeyAdapter {
    * @return        true if the key is being pressed, false otherwise.
    */
   public static boolean keyIsPressed(int keyCode) {
-    for (int pressedCode : keysPressed) {
+    for (int pressedCode : pressed()) {
       if (keyCode == pressedCode) {
         return true;
       }
@@ -66,6 +68,7 @@ public class Keyboard extends KeyAdapter {
    * @return  an array of integers representing all keys currently being pressed.
    */
   public static int[] keys() {
+    Set<Integer> keysPressed = pressed();
     Iterator<Integer> keyPressedIterator = keysPressed.iterator();
     int[] keys = new int[keysPressed.size()];
     for (int i = 0; i < keys.length && keyPressedIterator.hasNext(); i++) {
@@ -84,7 +87,7 @@ public class Keyboard extends KeyAdapter {
    * @return  an integer code representing the most recently pressed key.
    */
   public static int key() {
-    return mostRecentKeyPressed;
+    return World.current().keyboard.mostRecentKeyPressed;
   }
 
   /**
@@ -114,7 +117,7 @@ public class Keyboard extends KeyAdapter {
       throw new IllegalArgumentException("set must not be null.");
     }
     ArrayList<Vector> vectorsPressed = new ArrayList<Vector>();
-    for (int keyPressed : keysPressed) {
+    for (int keyPressed : pressed()) {
       Vector vectorPressed = set.getVector(keyPressed);
       if (vectorPressed != null) {
         vectorsPressed.add(vectorPressed);
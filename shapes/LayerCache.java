@@ -0,0 +1,70 @@
+package shapes;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.util.*;
+
+// Pictures of the cached layers, for one canvas. A layer is drawn into its
+// picture once, and after that the picture is drawn in one go, until the
+// layer's version changes. Only the canvas's painting thread uses this.
+class LayerCache {
+  private static class Picture {
+    final long version;
+    final BufferedImage image;
+
+    Picture(long version, BufferedImage image) {
+      this.version = version;
+      this.image = image;
+    }
+  }
+
+  private final Map<Integer, Picture> pictures =
+    new HashMap<Integer, Picture>();
+  // the layers drawn since the last call to forgetUnused()
+  private final Set<Integer> used = new HashSet<Integer>();
+
+  // Draws a cached layer, first redrawing its picture if it's out of date.
+  // Shapes are drawn where they were at the end of the tick.
+  void draw(Graphics2D g, Snapshot.Layer layer) {
+    used.add(layer.number);
+    Picture picture = pictures.get(layer.number);
+    if (picture == null || picture.version != layer.version) {
+      BufferedImage image = picture != null
+        ? picture.image
+        : g.getDeviceConfiguration().createCompatibleImage(
+            Game.WIDTH,
+            Game.HEIGHT,
+            Transparency.TRANSLUCENT
+          );
+      paint(image, g.getRenderingHints(), layer);
+      picture = new Picture(layer.version, image);
+      pictures.put(layer.number, picture);
+    }
+    g.drawImage(picture.image, 0, 0, null);
+  }
+
+  private static void paint(
+    BufferedImage image,
+    Map<?, ?> hints,
+    Snapshot.Layer layer
+  ) {
+    Graphics2D g = image.createGraphics();
+    g.setComposite(AlphaComposite.Clear);
+    g.fillRect(0, 0, image.getWidth(), image.getHeight());
+    g.setComposite(AlphaComposite.SrcOver);
+    g.setRenderingHints(hints);
+    Snapshot.Batch batch = new Snapshot.Batch(Game.usesBatchedDrawing());
+    for (Snapshot.Sprite sprite : layer.sprites) {
+      batch.render(g, sprite, 1);
+    }
+    batch.flush(g);
+    g.dispose();
+  }
+
+  // Lets go of the pictures of layers that weren't drawn since the last
+  // call, because they're empty now or no longer cached.
+  void forgetUnused() {
+    pictures.keySet().retainAll(used);
+    used.clear();
+  }
+}
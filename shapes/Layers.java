@@ -0,0 +1,269 @@
+package shapes;
+
+import java.util.*;
+
+// The shapes in each layer of a world, in the order they're drawn.
+//
+// Each layer keeps its shapes in an array, in the order they joined the
+// layer. Adding a shape puts it on the end, and removing one just leaves a
+// gap, so both take the same time however big the layer is. The gaps are
+// closed up all at once by compact(), which the game calls at the end of
+// each frame, keeping the order of the remaining shapes.
+//
+// A layer can also be cached, so the canvas draws it from a saved picture.
+// Each cached layer has a version, which changes whenever a shape in it
+// might look different or a shape joins or leaves it; the canvas redraws
+// the picture when the version it was made from is out of date.
+class Layers {
+  // A single layer. Entries from 0 to size - 1 are in drawing order, and
+  // are null where a shape has been removed since the last compact().
+  static class Layer {
+    private final int number;
+    private Shape[] shapes = new Shape[16];
+    private int size;
+    private int gaps;
+    private boolean cached;
+    private long version;
+    // the layer's most recent snapshot while it's cached, which is reused
+    // until the version changes
+    private Snapshot.Layer snapshot;
+
+    private Layer(int number, boolean cached) {
+      this.number = number;
+      this.cached = cached;
+    }
+
+    int size() {
+      return size;
+    }
+
+    // The shape at index i, or null if there's a gap there.
+    Shape get(int i) {
+      return shapes[i];
+    }
+
+    // What the canvas needs to draw this layer as it is now. The old and
+    // new sprites of shapes that look different since the last snapshot
+    // are added to changed.
+    Snapshot.Layer snapshot(java.util.List<Snapshot.Sprite> changed) {
+      // speech bubbles come and go without changing the version, so a
+      // layer with a speaking shape is drawn normally
+      boolean useCache = cached && !hasSpeech();
+      if (useCache && snapshot != null && snapshot.version == version) {
+        // nothing in the layer has changed
+        return snapshot;
+      }
+
+      java.util.List<Snapshot.Sprite> sprites =
+        new ArrayList<Snapshot.Sprite>(size - gaps);
+      int culled = 0;
+      for (int i = 0; i < size; i++) {
+        Shape s = shapes[i];
+        if (s == null) continue;
+        Snapshot.Sprite last = s.lastSprite;
+        boolean offCanvas = offCanvas(s);
+        if (s.isDestroyed() || offCanvas) {
+          if (last != null) {
+            changed.add(last);
+            s.lastSprite = null;
+          }
+          s.looksChanged = false;
+          if (offCanvas) {
+            culled++;
+          }
+          continue;
+        }
+
+        Snapshot.Sprite sprite = s.sprite();
+        sprites.add(sprite);
+        // a shape that moved last tick was drawn part way along its move,
+        // so its old spot needs painting over even if it's stopped now
+        if (
+          last == null ||
+          s.looksChanged ||
+          last.moved() ||
+          !sprite.looksLike(last)
+        ) {
+          if (last != null) {
+            changed.add(last);
+          }
+          changed.add(sprite);
+        }
+        s.looksChanged = false;
+        s.lastSprite = sprite;
+      }
+      Snapshot.Layer made = new Snapshot.Layer(
+        number,
+        useCache ? version : Snapshot.Layer.UNCACHED,
+        sprites.toArray(new Snapshot.Sprite[0]),
+        culled
+      );
+      snapshot = useCache ? made : null;
+      return made;
+    }
+
+    // Whether s can't be seen anywhere along its move this tick, going by
+    // its bounding box. Speech can stick out of the box, so a speaking
+    // shape is left for the canvas to check.
+    private static boolean offCanvas(Shape s) {
+      if (s.isSpeaking() || s.getCenter() == null) return false;
+
+      // where the shape was at the start of the tick, relative to now
+      double startX = -s.movedX();
+      double startY = -s.movedY();
+      // a pixel to spare, since outlines and rounding can stick out
+      return
+        s.getRight() + Math.max(startX, 0) < -1 ||
+        s.getLeft() + Math.min(startX, 0) > Game.WIDTH + 1 ||
+        s.getTop() + Math.max(startY, 0) < -1 ||
+        s.getBottom() + Math.min(startY, 0) > Game.HEIGHT + 1;
+    }
+
+    private boolean hasSpeech() {
+      for (int i = 0; i < size; i++) {
+        if (shapes[i] != null && shapes[i].isSpeaking()) return true;
+      }
+      return false;
+    }
+  }
+
+  private final Map<Integer, Layer> layers = new HashMap<Integer, Layer>();
+  // the layer numbers in use, lowest first
+  private final java.util.List<Integer> numbers = new ArrayList<Integer>();
+  // {layer number, index in that layer} for each shape
+  private final Map<Shape, int[]> places = new HashMap<Shape, int[]>();
+  // whether any layer has gaps to close up
+  private boolean hasGaps;
+  // the numbers of the cached layers, including any that are empty
+  private final Set<Integer> cached = new HashSet<Integer>();
+  // how many times cached layers have changed; versions come from this, so
+  // a layer that's dropped and made again never repeats an old version
+  private long changes;
+
+  // The layer with the given number, which is made if there isn't one.
+  private Layer layerNumbered(int number) {
+    Layer layer = layers.get(number);
+    if (layer == null) {
+      layer = new Layer(number, cached.contains(number));
+      layers.put(number, layer);
+      int insertionPoint = ~Collections.binarySearch(numbers, number);
+      numbers.add(insertionPoint, number);
+    }
+    return layer;
+  }
+
+  // Puts shape on top of the given layer, taking it out of any other.
+  void add(Shape shape, int number) {
+    remove(shape);
+
+    Layer layer = layerNumbered(number);
+    changed(layer);
+    if (layer.size == layer.shapes.length) {
+      layer.shapes = Arrays.copyOf(layer.shapes, layer.size * 2);
+    }
+    layer.shapes[layer.size] = shape;
+    places.put(shape, new int[] { number, layer.size });
+    layer.size++;
+  }
+
+  // Makes room for extra more shapes in the given layer.
+  void reserve(int number, int extra) {
+    if (extra == 0) return;
+
+    Layer layer = layerNumbered(number);
+    if (layer.size + extra > layer.shapes.length) {
+      layer.shapes = Arrays.copyOf(layer.shapes, layer.size + extra);
+    }
+  }
+
+  void remove(Shape shape) {
+    int[] place = places.remove(shape);
+    if (place == null) return;
+
+    Layer layer = layers.get(place[0]);
+    layer.shapes[place[1]] = null;
+    layer.gaps++;
+    hasGaps = true;
+    changed(layer);
+  }
+
+  // Called whenever shape might look different.
+  void changed(Shape shape) {
+    if (cached.isEmpty()) return;
+
+    int[] place = places.get(shape);
+    if (place != null) {
+      changed(layers.get(place[0]));
+    }
+  }
+
+  private void changed(Layer layer) {
+    if (layer.cached) {
+      layer.version = ++changes;
+    }
+  }
+
+  void setCached(int number, boolean cache) {
+    if (cache) {
+      cached.add(number);
+    } else {
+      cached.remove(number);
+    }
+    Layer layer = layers.get(number);
+    if (layer != null) {
+      layer.cached = cache;
+      layer.version = ++changes;
+      layer.snapshot = null;
+    }
+  }
+
+  boolean isCached(int number) {
+    return cached.contains(number);
+  }
+
+  int layerOf(Shape shape) {
+    return places.get(shape)[0];
+  }
+
+  // The layer numbers in use, lowest (drawn first) first.
+  java.util.List<Integer> numbers() {
+    return numbers;
+  }
+
+  Layer get(int number) {
+    return layers.get(number);
+  }
+
+  // Closes up the gaps left by removed shapes, and drops layers that have
+  // become empty.
+  void compact() {
+    if (!hasGaps) return;
+
+    Iterator<Integer> iter = numbers.iterator();
+    while (iter.hasNext()) {
+      Integer number = iter.next();
+      Layer layer = layers.get(number);
+      if (layer.gaps == 0) continue;
+
+      int kept = 0;
+      for (int i = 0; i < layer.size; i++) {
+        Shape shape = layer.shapes[i];
+        if (shape == null) continue;
+        if (kept != i) {
+          layer.shapes[kept] = shape;
+          places.get(shape)[1] = kept;
+        }
+        kept++;
+      }
+      Arrays.fill(layer.shapes, kept, layer.size, null);
+      layer.size = kept;
+      layer.gaps = 0;
+
+      if (kept == 0) {
+        layers.remove(number);
+        iter.remove();
+      }
+    }
+    hasGaps = false;
+  }
+}
@@ -13,9 +13,13 @@ import java.awt.event.*;
  * <code>shape.move(shape.towards(Mouse.clickLocation(), 10);</code>
  */
 public class Mouse implements MouseMotionListener, MouseListener {
-  private static Point click;
-  private static Point mouse;
-  private static boolean inWindow = false;
+  // written on Swing's thread and read on the game loop's, so volatile
+  private volatile Point click;
+  private volatile Point mouse;
+  private volatile boolean inWindow = false;
+
+  Mouse() {
+  }
   
   /**
    * Returns the location of a mouse click. If the mouse button is pressed and
@@ -27,6 +31,11 @@ public class Mouse implements MouseMotionListener, MouseListener {
    *          Returns <code>null</code> if the mouse button isn't pressed.
    */
   public static Point clickLocation() {
+    return World.current().mouse.click;
+  }
+
+  // clickLocation() for this mouse, whichever world is current
+  Point getClick() {
     return click;
   }
 
@@ -41,7 +50,7 @@ public class Mouse implements MouseMotionListener, MouseListener {
    *          just before it left the window.
    */
   public static Point mouseLocation() {
-    return mouse;
+    return World.current().mouse.mouse;
   }
 
   /**
@@ -51,7 +60,7 @@ public class Mouse implements MouseMotionListener, MouseListener {
    *          <code>true</code> if inside.
    */
   public static boolean isInWindow() {
-    return inWindow;
+    return World.current().mouse.inWindow;
   }
 
   private void updateClick(MouseEvent event) {
@@ -107,14 +116,14 @@ public class Mouse implements MouseMotionListener, MouseListener {
    * exits the window, and is used internally.
    */
   public void mouseExited(MouseEvent event) {
-    Mouse.inWindow = false;
+    inWindow = false;
   }
   /**
    * You can ignore this method. This method gets called when the mouse
    * enters the window, and is used internally.
    */
   public void mouseEntered(MouseEvent event) {
-    Mouse.inWindow = true;
+    inWindow = true;
   }
   /**
    * You can ignore this method. This method gets called when the mouse
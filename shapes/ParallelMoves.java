@@ -0,0 +1,129 @@
+package shapes;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// Runs the shapes' automatic updates in two phases, so that the collision
+// checks for many moving shapes can be spread across several cores.
+//
+// First, every move that can be worked out ahead of time is planned in
+// parallel, against the game as it stands at the start of the frame. Nothing
+// changes during this phase. Then the shapes update one at a time, in their
+// usual order, using their plans. A plan is thrown away and the move worked
+// out again only if a shape that already moved this frame has ended up
+// somewhere the plan didn't account for, so that nothing moves into a solid
+// shape. Planning only reads the world and the second phase always runs in
+// the same order, so the results are the same no matter how many threads are
+// used.
+class ParallelMoves {
+  // how many shapes each task plans before splitting
+  private static final int BATCH = 64;
+
+  private final ForkJoinPool pool;
+
+  ParallelMoves(int threads) {
+    pool = new ForkJoinPool(threads);
+  }
+
+  void autoUpdate(Shape[] shapes) {
+    // fill in lazily computed geometry now, so that planning only reads it
+    for (Shape s : shapes) {
+      s.getLeft();
+      s.boundingRadius();
+    }
+
+    Point[] plans = new Point[shapes.length];
+    pool.invoke(new PlanTask(shapes, plans, 0, shapes.length));
+
+    // the shapes, and the solid shapes, that have moved so far this frame,
+    // by where they ended up
+    SpatialHash moved = new SpatialHash();
+    SpatialHash movedSolid = new SpatialHash();
+    for (int i = 0; i < shapes.length; i++) {
+      Shape s = shapes[i];
+      Point plan = plans[i];
+      // solid shapes are blocked by any shape, others only by solid ones
+      if (plan != null && inTheWay(
+            s,
+            s.moveBounds(s.getDirection(), s.getSpeed()),
+            s.isSolid() ? moved : movedSolid
+          )) {
+        plan = null;
+      }
+
+      double left = s.getLeft();
+      double bottom = s.getBottom();
+      double right = s.getRight();
+      double top = s.getTop();
+      s.autoUpdate(plan);
+      if (
+        left != s.getLeft() ||
+        bottom != s.getBottom() ||
+        right != s.getRight() ||
+        top != s.getTop()
+      ) {
+        moved.update(s);
+        if (s.isSolid()) {
+          movedSolid.update(s);
+        }
+      }
+    }
+  }
+
+  void shutdown() {
+    pool.shutdown();
+  }
+
+  // Whether any of the moved shapes, other than mover, overlaps the box
+  // {left, bottom, right, top}.
+  private static boolean inTheWay(
+    Shape mover,
+    double[] box,
+    SpatialHash moved
+  ) {
+    if (moved.isEmpty()) {
+      return false;
+    }
+    for (Shape s : moved.query(box[0], box[1], box[2], box[3])) {
+      if (
+        s != mover &&
+        s.getLeft() <= box[2] && s.getRight() >= box[0] &&
+        s.getBottom() <= box[3] && s.getTop() >= box[1]
+      ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Plans the moves of shapes[from] through shapes[to - 1].
+  @SuppressWarnings("serial")
+  private static class PlanTask extends RecursiveAction {
+    private final Shape[] shapes;
+    private final Point[] plans;
+    private final int from, to;
+
+    PlanTask(Shape[] shapes, Point[] plans, int from, int to) {
+      this.shapes = shapes;
+      this.plans = plans;
+      this.from = from;
+      this.to = to;
+    }
+
+    protected void compute() {
+      if (to - from <= BATCH) {
+        for (int i = from; i < to; i++) {
+          if (shapes[i].canPlanMove()) {
+            plans[i] = shapes[i].planMove();
+          }
+        }
+        return;
+      }
+      int middle = (from + to) / 2;
+      invokeAll(
+        new PlanTask(shapes, plans, from, middle),
+        new PlanTask(shapes, plans, middle, to)
+      );
+    }
+  }
+}
@@ -9,6 +9,9 @@ package shapes;
  */
 public class Point {
   private double x, y;
+  // the shape this point is the center of, if any, which is told when the
+  // point changes
+  Shape owner;
 
   /**
    * Constructs a new point with the given x and y coordinates.
@@ -83,6 +86,9 @@ public class Point {
    */
   public void setX(double x) {
     this.x = x;
+    if (owner != null) {
+      owner.centerChanged();
+    }
   }
 
   /**
@@ -92,6 +98,9 @@ public class Point {
    */
   public void setY(double y) {
     this.y = y;
+    if (owner != null) {
+      owner.centerChanged();
+    }
   }
 
   /**
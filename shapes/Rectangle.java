@@ -39,12 +39,12 @@ public class Rectangle extends ConvexPolygon {
   // Override this!
   public void update() {}
 
-  Point[] getUnrotatedCorners() {
-    return new Point[] {
-      getCenter().translation(new Vector(-1 * width / 2, height / 2)),
-      getCenter().translation(new Vector(width / 2,      height / 2)),
-      getCenter().translation(new Vector(width / 2,      -1 * height / 2)),
-      getCenter().translation(new Vector(-1 * width / 2, -1 * height / 2))
+  double[] getCornerOffsets() {
+    return new double[] {
+      -1 * width / 2, height / 2,
+      width / 2,      height / 2,
+      width / 2,      -1 * height / 2,
+      -1 * width / 2, -1 * height / 2
     };
   }
 
@@ -86,6 +86,7 @@ public class Rectangle extends ConvexPolygon {
    */
   public void setHeight(double height) {
     this.height = height;
+    sizeChanged();
   }
 
   /**
@@ -104,6 +105,7 @@ public class Rectangle extends ConvexPolygon {
    */
   public void setWidth(double width) {
     this.width = width;
+    sizeChanged();
   }
 
   @Override
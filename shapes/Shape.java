@@ -28,6 +28,23 @@ public abstract class Shape {
   private Direction direction;
   private double speed;
   private Point center;
+  private boolean substepping;
+  // When substepping, the centers this shape passed through during its last
+  // automatic move, as {x0, y0, x1, y1, ...}. null otherwise.
+  private double[] sweep;
+  // cached maxRadius(), or NaN if the shape has been resized since
+  private double boundingRadius = Double.NaN;
+  // center at the start of the current tick, used to draw the shape between
+  // ticks. NaN before the first tick and after a jump with setCenter.
+  private double previousX = Double.NaN, previousY = Double.NaN;
+  // the world this shape was made in
+  final World world;
+  // how this shape looked in the most recent snapshot, or null if it wasn't
+  // in one
+  Snapshot.Sprite lastSprite;
+  // whether this shape's position, size, color, fill, visibility or layer
+  // has changed since then
+  boolean looksChanged;
 
   /**
    * Initializes the Shape. When you subclass shape, you'll
@@ -42,10 +59,8 @@ public abstract class Shape {
    */
   abstract public void update();
 
-  /**
-   * Draws the shape to the canvas.
-   */
-  abstract void render(Graphics2D g);
+  // Captures how this shape looks right now, for the canvas to draw.
+  abstract Snapshot.Sprite sprite();
 
   /**
    * Checks if this shape contains another given shape.
@@ -55,25 +70,6 @@ public abstract class Shape {
    */
   abstract public boolean contains(Shape s);
 
-  void renderSpeech(Graphics2D g) {
-    if (!isSpeaking()) {
-      return;
-    }
-    Point bottomLeft = new Point(getRight(), getTop());
-    getSpeechStyle().renderString(
-      getSpeech(),
-      bottomLeft,
-      TextStyle.ReferencePointLocation.BOTTOM_LEFT,
-      g,
-      getSpeechOrigin()
-    );
-  }
-
-  Point getSpeechOrigin() {
-    return
-      (new Point(getRight(), getTop())).translation(new Vector(-5, -5));
-  }
-
   /**
    * Checks if this shape contains a given point.
    *
@@ -88,11 +84,59 @@ public abstract class Shape {
    * This method moves the shape when it has a speed, etc.
    */
   void autoUpdate() {
+    autoUpdate(null);
+  }
+
+  // Like autoUpdate(), but if plan isn't null, it's where this frame's move
+  // ends, as worked out ahead of time by planMove().
+  void autoUpdate(Point plan) {
     if (this.isSpeaking()) {
       speechDuration--;
     }
+    sweep = null;
     if (Math.abs(speed) > Geometry.EPSILON) {
-      move(getDirection(), speed);
+      if (plan != null) {
+        finishMove(plan);
+      } else if (substepping) {
+        substep();
+      } else {
+        move(getDirection(), speed);
+      }
+    }
+  }
+
+  // Whether this frame's automatic move is a single move that planMove() can
+  // work out ahead of time.
+  boolean canPlanMove() {
+    return
+      !substepping &&
+      getDirection() != null &&
+      Math.abs(speed) > Geometry.EPSILON;
+  }
+
+  // Where this frame's automatic move will end, without making it.
+  Point planMove() {
+    return plannedMove(getDirection(), speed);
+  }
+
+  // Moves speed pixels in steps no longer than this shape's smallest extent,
+  // so that it can't jump past anything in a single step, and records the
+  // centers it passes through.
+  private void substep() {
+    int steps = 1;
+    double extent = minExtent();
+    if (Math.abs(speed) > extent && extent > Geometry.EPSILON) {
+      steps = (int) Math.ceil(Math.abs(speed) / extent);
+    }
+
+    sweep = new double[2 * (steps + 1)];
+    sweep[0] = getCenter().getX();
+    sweep[1] = getCenter().getY();
+    for (int i = 1; i <= steps; i++) {
+      // direction is looked up each step, since bouncing can change it
+      move(getDirection(), speed / steps);
+      sweep[2 * i] = getCenter().getX();
+      sweep[2 * i + 1] = getCenter().getY();
     }
   }
 
@@ -103,8 +147,9 @@ public abstract class Shape {
    * is called, and should call setup().
    */
   public Shape() {
-    Game.addShape(this);
-    Game.setLayer(this, 0);
+    world = World.current();
+    world.addShape(this);
+    world.setLayer(this, 0);
 
     // set default values
     setColor(Color.BLACK);
@@ -163,11 +208,87 @@ public abstract class Shape {
    *            <code>null</code>.
    */
   public boolean isTouching(Shape s) {
+    long start = System.nanoTime();
+    boolean touching = touches(s);
+    world.frameStats.addCollisionTime(System.nanoTime() - start);
+    return touching;
+  }
+
+  // isTouching(), without counting the time it takes
+  boolean touches(Shape s) {
     if (s == null) return false;
     if (isDestroyed() || s.isDestroyed()) {
       return false;
     }
-    return Geometry.touching(this, s);
+    if (Geometry.touching(this, s)) {
+      return true;
+    }
+    return this.touchedDuringSweep(s) || s.touchedDuringSweep(this);
+  }
+
+  // Whether this shape has a path from its last automatic move, which
+  // touches() also checks.
+  boolean hasSweep() {
+    return sweep != null;
+  }
+
+  // The bounding box of everywhere this shape was during its last automatic
+  // move, as {left, bottom, right, top}, or null if it has no sweep.
+  double[] sweptBounds() {
+    if (sweep == null) {
+      return null;
+    }
+
+    double cx = getCenter().getX();
+    double cy = getCenter().getY();
+    double minX = cx, maxX = cx, minY = cy, maxY = cy;
+    for (int i = 0; i < sweep.length; i += 2) {
+      minX = Math.min(minX, sweep[i]);
+      maxX = Math.max(maxX, sweep[i]);
+      minY = Math.min(minY, sweep[i + 1]);
+      maxY = Math.max(maxY, sweep[i + 1]);
+    }
+    return new double[] {
+      getLeft() + (minX - cx),
+      getBottom() + (minY - cy),
+      getRight() + (maxX - cx),
+      getTop() + (maxY - cy)
+    };
+  }
+
+  // Checks whether this shape touched other at any point along the path it
+  // took during its last automatic move. other is taken to be where it is
+  // now.
+  private boolean touchedDuringSweep(Shape other) {
+    if (sweep == null) {
+      return false;
+    }
+
+    // rule out shapes nowhere near the sweep
+    double[] swept = sweptBounds();
+    if (swept[0] - Geometry.TOLERANCE > other.getRight() ||
+        swept[2] + Geometry.TOLERANCE < other.getLeft() ||
+        swept[1] - Geometry.TOLERANCE > other.getTop() ||
+        swept[3] + Geometry.TOLERANCE < other.getBottom()) {
+      return false;
+    }
+
+    double cx = getCenter().getX();
+    double cy = getCenter().getY();
+    for (int i = 0; i + 3 < sweep.length; i += 2) {
+      double impact = Geometry.timeOfImpact(
+        this,
+        sweep[i] - cx,
+        sweep[i + 1] - cy,
+        sweep[i + 2] - sweep[i],
+        sweep[i + 3] - sweep[i + 1],
+        other
+      );
+      if (impact >= 0) {
+        return true;
+      }
+    }
+    return false;
   }
 
   /**
@@ -278,14 +399,38 @@ public abstract class Shape {
     if (direction == null || Math.abs(pixels) < Geometry.EPSILON) {
       return;
     }
+    finishMove(plannedMove(direction, pixels));
+  }
+
+  // The box {left, bottom, right, top} this shape sweeps through when moving
+  // the given distance, plus a margin. Only shapes overlapping it can get in
+  // the way.
+  double[] moveBounds(Direction direction, double pixels) {
+    Point end = getCenter().translation(new Vector(direction, pixels));
+    double dx = end.getX() - getCenter().getX();
+    double dy = end.getY() - getCenter().getY();
+    return new double[] {
+      getLeft() + Math.min(dx, 0) - Geometry.TOLERANCE,
+      getBottom() + Math.min(dy, 0) - Geometry.TOLERANCE,
+      getRight() + Math.max(dx, 0) + Geometry.TOLERANCE,
+      getTop() + Math.max(dy, 0) + Geometry.TOLERANCE
+    };
+  }
+
+  // Where moving would take this shape, without moving it. This only reads
+  // the game, so several shapes can plan their moves at once.
+  private Point plannedMove(Direction direction, double pixels) {
+    long start = System.nanoTime();
     Point end = getCenter().translation(new Vector(direction, pixels));
     Point maxMovement = end;
-    Shape[] obstacles;
-    if (isSolid()) {
-      obstacles = Game.getAllShapes();
-    } else {
-      obstacles = Game.getSolids();
-    }
+    double[] bounds = moveBounds(direction, pixels);
+    java.util.List<Shape> obstacles = world.getObstacles(
+      this,
+      bounds[0],
+      bounds[1],
+      bounds[2],
+      bounds[3]
+    );
     for (Shape obstacle : obstacles) {
       if (obstacle == this) continue;
       Point blockedEnd = this.maxMovement(end, obstacle);
@@ -293,8 +438,8 @@ public abstract class Shape {
         maxMovement = blockedEnd;
       }
     }
-    if (Game.getBorderBehavior() == Game.BorderBehavior.SOLID ||
-        Game.getBorderBehavior() == Game.BorderBehavior.BOUNCE
+    if (world.borderBehavior == Game.BorderBehavior.SOLID ||
+        world.borderBehavior == Game.BorderBehavior.BOUNCE
     ) {
       for (Segment border: Game.getBorders()) {
         Point blockedEnd = this.maxMovement(end, border);
@@ -303,8 +448,13 @@ public abstract class Shape {
         }
       }
     }
-    setCenter(maxMovement);
-    if (Game.getBorderBehavior() == Game.BorderBehavior.BOUNCE) {
+    world.frameStats.addCollisionTime(System.nanoTime() - start);
+    return maxMovement;
+  }
+
+  private void finishMove(Point end) {
+    relocate(end);
+    if (world.borderBehavior == Game.BorderBehavior.BOUNCE) {
       bounce();
     }
   }
@@ -360,7 +510,7 @@ public abstract class Shape {
         // nate: nicer way to do this?
         correctionDirection = correctionDirection.reverse();
       }
-      setCenter(getCenter().translation(correctionDirection, change));
+      relocate(getCenter().translation(correctionDirection, change));
     }
   }
 
@@ -379,11 +529,12 @@ public abstract class Shape {
    * @see     Mouse#clickLocation()
    */
   public boolean isClicked() {
-    if (Mouse.clickLocation() == null) {
+    Point click = world.mouse.getClick();
+    if (click == null) {
       return false;
     }
 
-    return this.contains(Mouse.clickLocation());
+    return this.contains(click);
   }
 
   /**
@@ -603,6 +754,7 @@ public abstract class Shape {
   public void destroy() {
     // nate: who remove the same from Game?
     destroyed = true;
+    world.appearanceChanged(this);
   }
 
   /**
@@ -626,12 +778,15 @@ public abstract class Shape {
     Direction target = getDirection().rotation(degrees);
     boolean clockwise = degrees < 0;
     Direction maxRotate = target;
-    Shape[] obstacles;
-    if (isSolid()) {
-      obstacles = Game.getAllShapes();
-    } else {
-      obstacles = Game.getSolids();
-    }
+    // while rotating, this shape stays within its bounding circle
+    double reach = boundingRadius() + Geometry.TOLERANCE;
+    java.util.List<Shape> obstacles = world.getObstacles(
+      this,
+      getCenter().getX() - reach,
+      getCenter().getY() - reach,
+      getCenter().getX() + reach,
+      getCenter().getY() + reach
+    );
     for (Shape obstacle : obstacles) {
       if (obstacle == this) continue;
       Direction blockedRotate =
@@ -643,8 +798,8 @@ public abstract class Shape {
         maxRotate
       );
     }
-    if (Game.getBorderBehavior() == Game.BorderBehavior.SOLID ||
-        Game.getBorderBehavior() == Game.BorderBehavior.BOUNCE
+    if (world.borderBehavior == Game.BorderBehavior.SOLID ||
+        world.borderBehavior == Game.BorderBehavior.BOUNCE
     ) {
       for (Segment border: Game.getBorders()) {
         Direction blockedEnd =
@@ -658,7 +813,7 @@ public abstract class Shape {
       }
     }
     setDirection(maxRotate);
-    if (Game.getBorderBehavior() == Game.BorderBehavior.BOUNCE) {
+    if (world.borderBehavior == Game.BorderBehavior.BOUNCE) {
       bounce();
     }
   }
@@ -675,7 +830,7 @@ public abstract class Shape {
    */
   public void setLayer(int layer) {
     if (isDestroyed()) return;
-    Game.setLayer(this, layer);
+    world.setLayer(this, layer);
   }
 
   /**
@@ -690,7 +845,7 @@ public abstract class Shape {
    */
   public int getLayer() {
     if (isDestroyed()) return -1;
-    return Game.getLayerOf(this);
+    return world.getLayerOf(this);
   }
 
   // Getters & setters
@@ -706,6 +861,7 @@ public abstract class Shape {
    */
   public void setFilled(boolean fill) {
     this.fill = fill;
+    world.appearanceChanged(this);
   }
 
   /**
@@ -731,6 +887,7 @@ public abstract class Shape {
    */
   public void setInvisible(boolean invisible) {
     this.invisible = invisible;
+    world.appearanceChanged(this);
   }
 
   /**
@@ -755,6 +912,7 @@ public abstract class Shape {
       throw new IllegalArgumentException("color must not be null.");
     }
     this.color = color;
+    world.appearanceChanged(this);
   }
 
   /**
@@ -784,9 +942,9 @@ public abstract class Shape {
     }
 
     if (solid) {
-      Game.addSolid(this);
+      world.addSolid(this);
     } else {
-      Game.removeSolid(this);
+      world.removeSolid(this);
     }
 
     this.solid = solid;
@@ -833,6 +991,7 @@ public abstract class Shape {
    */
   public void setDirection(Direction direction) {
     this.direction = direction;
+    boundsChanged();
   }
 
   /**
@@ -883,7 +1042,42 @@ public abstract class Shape {
   }
 
   /**
-   * Get the location of the shape's center.
+   * Set whether this shape moves in small steps.
+   * <p>
+   * A fast shape can move so far in one frame that it skips right over
+   * another shape, so {@link #isTouching(Shape)} never notices them
+   * touching. Turning on substepping fixes this. When this shape moves
+   * because of its speed (see {@link #setSpeed(double)}), it moves in steps
+   * no longer than its smallest width, and {@link #isTouching(Shape)} also
+   * reports shapes it touched anywhere along the way during the last frame.
+   * <p>
+   * Substepping is off by default. It's useful for small, fast shapes like
+   * bullets.
+   *
+   * @param substepping true to move in small steps, false to move all at
+   *                    once.
+   */
+  public void setSubstepping(boolean substepping) {
+    this.substepping = substepping;
+    if (!substepping) {
+      sweep = null;
+    }
+  }
+
+  /**
+   * Get whether this shape moves in small steps.
+   *
+   * @return  true if this shape moves in small steps, false if not.
+   * @see     #setSubstepping(boolean)
+   */
+  public boolean isSubstepping() {
+    return substepping;
+  }
+
+  /**
+   * Get the location of the shape's center. Changing the returned point,
+   * with {@link Point#setX} or {@link Point#setY}, moves this shape the
+   * same way {@link #setCenter(Point)} does.
    *
    * @return  a point representing the shape's center.
    */
@@ -922,7 +1116,48 @@ public abstract class Shape {
     if (center == null) {
       throw new IllegalArgumentException("center must not be null.");
     }
-    this.center = center;
+    relocate(center);
+    // don't draw the shape sliding to its new location
+    previousX = previousY = Double.NaN;
+  }
+
+  private void relocate(Point center) {
+    // keep a copy, so that the caller changing its point later can't move
+    // this shape without the world knowing
+    if (this.center != null) {
+      this.center.owner = null;
+    }
+    this.center = new Point(center.getX(), center.getY());
+    this.center.owner = this;
+    boundsChanged();
+  }
+
+  // Called when the point returned by getCenter() is changed in place, which
+  // moves this shape like setCenter() does.
+  void centerChanged() {
+    boundsChanged();
+    previousX = previousY = Double.NaN;
+  }
+
+  void rememberCenter() {
+    previousX = center.getX();
+    previousY = center.getY();
+  }
+
+  // How far this shape has moved since the start of the current tick, or 0
+  // if it jumped.
+  double movedX() {
+    if (Double.isNaN(previousX)) {
+      return 0;
+    }
+    return center.getX() - previousX;
+  }
+
+  double movedY() {
+    if (Double.isNaN(previousY)) {
+      return 0;
+    }
+    return center.getY() - previousY;
   }
 
   /**
@@ -949,6 +1184,37 @@ public abstract class Shape {
    * @return  y-value of the lowest point in this shape.
    */
   abstract public double getBottom();
+
+  // Returns the distance from this shape's center to its farthest point.
+  abstract double maxRadius();
+
+  // Returns this shape's smallest width, measured in any direction.
+  abstract double minExtent();
+
+  // Returns the radius of the smallest circle around this shape's center that
+  // contains the whole shape. No part of the shape can get farther from the
+  // center than this, however it moves or turns, so collision checks use it
+  // to rule out faraway shapes cheaply.
+  double boundingRadius() {
+    if (Double.isNaN(boundingRadius)) {
+      boundingRadius = maxRadius();
+    }
+    return boundingRadius;
+  }
+
+  // Subclasses call this whenever a change to this shape's location, size or
+  // orientation may have moved its edges.
+  void boundsChanged() {
+    world.updateBounds(this);
+    world.appearanceChanged(this);
+  }
+
+  // Subclasses call this whenever this shape's size changes.
+  void sizeChanged() {
+    boundingRadius = Double.NaN;
+    boundsChanged();
+  }
+
   double getLimit(Direction d) {
     if (d.equals(Direction.RIGHT)) return getRight();
     if (d.equals(Direction.UP)) return getTop();
@@ -0,0 +1,607 @@
+package shapes;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.util.*;
+import java.util.function.*;
+
+// An unchanging picture of the game at the end of a tick: everything the
+// canvas needs to draw a frame. The game loop makes a new snapshot after
+// running ticks and hands it to the canvas, which draws only from snapshots.
+// That way painting never reads shapes while the game is changing them, and
+// the next tick can run while the last one is being drawn.
+class Snapshot {
+  // when the tick this snapshot shows was scheduled, in System.nanoTime()
+  // terms
+  final long tickTime;
+
+  private final Color background;
+
+  // if title is set, only the title is drawn
+  private final String title;
+  private final TextStyle titleStyle;
+
+  // bottom layer first
+  private final Layer[] layers;
+  // how the shapes that look different from the previous snapshot looked
+  // then and look now, or null if anything might have changed
+  private final Sprite[] changed;
+  private final String counters;
+  private final TextStyle counterStyle;
+  private final String subtitle;
+  private final TextStyle subtitleStyle;
+  // null if the frame stats aren't shown
+  private final String frameStats;
+  private final TextStyle frameStatsStyle;
+
+  // the whole canvas, which mustn't be changed
+  private static final java.awt.Rectangle CANVAS =
+    new java.awt.Rectangle(0, 0, Game.WIDTH, Game.HEIGHT);
+  private static final Point SUBTITLE_POINT =
+    new Point(Game.WIDTH / 2.0, 30);
+  private static final Point FRAME_STATS_POINT =
+    new Point(Game.WIDTH - 10, Game.HEIGHT - 10);
+
+  Snapshot(
+    long tickTime,
+    Color background,
+    String title,
+    TextStyle titleStyle
+  ) {
+    this.tickTime = tickTime;
+    this.background = background;
+    this.title = title;
+    this.titleStyle = titleStyle;
+    this.layers = new Layer[0];
+    this.changed = null;
+    this.counters = null;
+    this.counterStyle = null;
+    this.subtitle = null;
+    this.subtitleStyle = null;
+    this.frameStats = null;
+    this.frameStatsStyle = null;
+  }
+
+  Snapshot(
+    long tickTime,
+    Color background,
+    Layer[] layers,
+    Sprite[] changed,
+    String counters,
+    TextStyle counterStyle,
+    String subtitle,
+    TextStyle subtitleStyle,
+    String frameStats,
+    TextStyle frameStatsStyle
+  ) {
+    this.tickTime = tickTime;
+    this.background = background;
+    this.title = null;
+    this.titleStyle = null;
+    this.layers = layers;
+    this.changed = changed;
+    this.counters = counters;
+    this.counterStyle = counterStyle;
+    this.subtitle = subtitle;
+    this.subtitleStyle = subtitleStyle;
+    this.frameStats = frameStats;
+    this.frameStatsStyle = frameStatsStyle;
+  }
+
+  // Draws the snapshot. alpha is how far along we are towards the next tick,
+  // from 0 to 1; shapes are drawn that far between where they were at the
+  // start of the tick and where they ended up. Cached layers are drawn from
+  // pictures kept in cache, or normally if cache is null. How long the
+  // shapes and the text take to draw is recorded in stats.
+  void render(
+    Graphics2D g,
+    double alpha,
+    FrameStats stats,
+    LayerCache cache
+  ) {
+    g.setColor(background);
+    g.fillRect(0, 0, Game.WIDTH, Game.HEIGHT);
+
+    long start = System.nanoTime();
+    if (title != null) {
+      titleStyle.renderString(
+        title,
+        new Point(Game.WIDTH / 2.0, Game.HEIGHT / 2.0),
+        TextStyle.ReferencePointLocation.CENTER,
+        g,
+        null
+      );
+      stats.record(FrameStats.Phase.TEXT, System.nanoTime() - start);
+      return;
+    }
+
+    // when only part of the canvas is being painted, shapes outside that
+    // part are skipped
+    java.awt.Rectangle clip = g.getClipBounds();
+    if (clip != null && clip.contains(CANVAS)) {
+      clip = null;
+    }
+    Function<Font, FontMetrics> metrics = g::getFontMetrics;
+
+    long speechNanos = 0;
+    int drawn = 0;
+    int culled = 0;
+    Batch batch = new Batch(Game.usesBatchedDrawing());
+    for (Layer layer : layers) {
+      culled += layer.culled;
+      if (cache != null && layer.version != Layer.UNCACHED) {
+        cache.draw(g, layer);
+        drawn += layer.sprites.length;
+        continue;
+      }
+      for (Sprite sprite : layer.sprites) {
+        java.awt.Rectangle area = sprite.area(metrics);
+        if (!area.intersects(CANVAS)) {
+          // a speaking shape off the canvas, whose speech is too
+          culled++;
+          continue;
+        }
+        if (clip != null && !area.intersects(clip)) continue;
+        speechNanos += batch.render(g, sprite, alpha);
+        drawn++;
+      }
+      batch.flush(g);
+    }
+    stats.recordShapes(drawn, culled);
+    if (cache != null) {
+      cache.forgetUnused();
+    }
+    long textStart = System.nanoTime();
+    stats.record(FrameStats.Phase.LAYERS, textStart - start - speechNanos);
+
+    Counter.renderCounters(counters, counterStyle, g);
+    if (subtitle != null) {
+      subtitleStyle.renderString(
+        subtitle,
+        SUBTITLE_POINT,
+        TextStyle.ReferencePointLocation.BOTTOM_CENTER,
+        g,
+        null
+      );
+    }
+    if (frameStats != null) {
+      frameStatsStyle.renderString(
+        frameStats,
+        FRAME_STATS_POINT,
+        TextStyle.ReferencePointLocation.TOP_RIGHT,
+        g,
+        null
+      );
+    }
+    stats.record(
+      FrameStats.Phase.TEXT,
+      System.nanoTime() - textStart + speechNanos
+    );
+  }
+
+  // The part of the canvas that needs painting to go from showing previous
+  // to showing this snapshot: where the shapes that changed were and are,
+  // and any text that changed. Returns null if that's the whole canvas, and
+  // an empty rectangle if nothing changed. metrics measures text.
+  java.awt.Rectangle changedSince(
+    Snapshot previous,
+    Function<Font, FontMetrics> metrics
+  ) {
+    if (
+      previous == null ||
+      changed == null ||
+      title != null ||
+      previous.title != null ||
+      !background.equals(previous.background)
+    ) {
+      return null;
+    }
+
+    // a rectangle with negative size doesn't exist, and adding to it gives
+    // just the added rectangle
+    java.awt.Rectangle area = new java.awt.Rectangle(0, 0, -1, -1);
+    for (Sprite sprite : changed) {
+      area.add(sprite.area(metrics));
+    }
+
+    if (
+      !counters.equals(previous.counters) ||
+      counterStyle != previous.counterStyle
+    ) {
+      area.add(Counter.countersArea(counters, counterStyle, metrics));
+      area.add(
+        Counter.countersArea(previous.counters, previous.counterStyle, metrics)
+      );
+    }
+    addTextArea(
+      area,
+      subtitle, subtitleStyle,
+      previous.subtitle, previous.subtitleStyle,
+      SUBTITLE_POINT, TextStyle.ReferencePointLocation.BOTTOM_CENTER,
+      metrics
+    );
+    addTextArea(
+      area,
+      frameStats, frameStatsStyle,
+      previous.frameStats, previous.frameStatsStyle,
+      FRAME_STATS_POINT, TextStyle.ReferencePointLocation.TOP_RIGHT,
+      metrics
+    );
+    takeInOutlines(area, metrics);
+    return area.intersection(CANVAS);
+  }
+
+  // Grows area to take in every outlined shape that's partly inside it.
+  // Java2D doesn't draw an outline quite the same when it's clipped, so
+  // painting just part of one leaves stray pixels at the edge of the clip.
+  private void takeInOutlines(
+    java.awt.Rectangle area,
+    Function<Font, FontMetrics> metrics
+  ) {
+    if (area.isEmpty()) return;
+
+    // taking in one outline can bring others partly inside
+    boolean grew = true;
+    while (grew) {
+      grew = false;
+      for (Layer layer : layers) {
+        for (Sprite sprite : layer.sprites) {
+          if (!sprite.outlined()) continue;
+          java.awt.Rectangle outline = sprite.area(metrics);
+          if (outline.intersects(area) && !area.contains(outline)) {
+            area.add(outline);
+            grew = true;
+          }
+        }
+      }
+    }
+  }
+
+  // Adds where a piece of text was and is to area, if it changed. Either
+  // text can be null if it isn't shown.
+  private static void addTextArea(
+    java.awt.Rectangle area,
+    String text,
+    TextStyle style,
+    String previousText,
+    TextStyle previousStyle,
+    Point referencePoint,
+    TextStyle.ReferencePointLocation referenceLocation,
+    Function<Font, FontMetrics> metrics
+  ) {
+    if (Objects.equals(text, previousText) && style == previousStyle) {
+      return;
+    }
+    if (text != null) {
+      area.add(style.area(
+        text,
+        referencePoint,
+        referenceLocation,
+        metrics.apply(style.getFont()),
+        null
+      ));
+    }
+    if (previousText != null) {
+      area.add(previousStyle.area(
+        previousText,
+        referencePoint,
+        referenceLocation,
+        metrics.apply(previousStyle.getFont()),
+        null
+      ));
+    }
+  }
+
+  // Draws sprites, optionally merging each run of sprites with the same color
+  // and fill into one path that's filled or drawn in a single call. Runs
+  // never reach past a sprite that's drawn on its own, so the drawing order
+  // stays the same.
+  static class Batch {
+    // which way round Ellipse2D goes; polygons are added the same way round,
+    // or where two shapes in a batch overlapped they'd cancel out
+    private static final boolean ELLIPSE_POSITIVE =
+      signedArea(new Ellipse2D.Double(0, 0, 10, 10)) > 0;
+
+    // the most sprites in one path. Filling a path gets slower the more
+    // edges it has across each row of pixels, so huge batches lose out.
+    private static final int MAX_SIZE = 32;
+
+    private final boolean enabled;
+    private final Path2D.Double path = new Path2D.Double(Path2D.WIND_NON_ZERO);
+    // the color and fill of the sprites in path, if there are any
+    private Color color;
+    private boolean filled;
+    // how many sprites are in path
+    private int size;
+
+    Batch(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    // Draws sprite, or adds it to the batch, and returns how long its
+    // speech took to draw, in nanoseconds.
+    long render(Graphics2D g, Sprite sprite, double alpha) {
+      if (!enabled || sprite.speech != null) {
+        flush(g);
+        return sprite.render(g, alpha);
+      }
+      if (sprite.invisible) {
+        return 0;
+      }
+      if (
+        size == MAX_SIZE ||
+        size > 0 && (sprite.filled != filled || !sprite.color.equals(color))
+      ) {
+        flush(g);
+      }
+      color = sprite.color;
+      filled = sprite.filled;
+      // Canvas y runs down.
+      sprite.addTo(
+        path,
+        sprite.moveX * (alpha - 1),
+        -sprite.moveY * (alpha - 1)
+      );
+      size++;
+      return 0;
+    }
+
+    // Draws the sprites added since the last flush.
+    void flush(Graphics2D g) {
+      if (size == 0) return;
+
+      g.setColor(color);
+      if (filled) {
+        g.fill(path);
+      } else {
+        g.draw(path);
+      }
+      path.reset();
+      size = 0;
+    }
+
+    private static double signedArea(java.awt.Shape shape) {
+      double area = 0;
+      double[] coords = new double[6];
+      double startX = 0, startY = 0, lastX = 0, lastY = 0;
+      PathIterator iter = shape.getPathIterator(null, 0.1);
+      for (; !iter.isDone(); iter.next()) {
+        double x, y;
+        switch (iter.currentSegment(coords)) {
+          case PathIterator.SEG_MOVETO:
+            startX = lastX = coords[0];
+            startY = lastY = coords[1];
+            continue;
+          case PathIterator.SEG_CLOSE:
+            x = startX;
+            y = startY;
+            break;
+          default:
+            x = coords[0];
+            y = coords[1];
+        }
+        area += lastX * y - x * lastY;
+        lastX = x;
+        lastY = y;
+      }
+      return area;
+    }
+  }
+
+  // The shapes in one layer, in drawing order.
+  static class Layer {
+    // the version of a layer that isn't cached
+    static final long UNCACHED = -1;
+
+    final int number;
+    // see Layers; the same version always means the same sprites
+    final long version;
+    final Sprite[] sprites;
+    // how many of the layer's shapes were left out for being off the canvas
+    final int culled;
+
+    Layer(int number, long version, Sprite[] sprites, int culled) {
+      this.number = number;
+      this.version = version;
+      this.sprites = sprites;
+      this.culled = culled;
+    }
+  }
+
+  // What a single shape looked like.
+  abstract static class Sprite {
+    private final Color color;
+    private final boolean filled;
+    private final boolean invisible;
+    // how far the shape moved during the tick
+    private final double moveX, moveY;
+    // null if the shape isn't speaking
+    private final String speech;
+    private final TextStyle speechStyle;
+    private final double right, top;
+    // the part of the canvas the shape covers anywhere along its move
+    // during the tick, not counting its speech
+    private final java.awt.Rectangle area;
+
+    Sprite(Shape shape) {
+      color = shape.getColor();
+      filled = shape.isFilled();
+      invisible = shape.isInvisible();
+      moveX = shape.movedX();
+      moveY = shape.movedY();
+      speech = shape.getSpeech();
+      speechStyle = speech == null ? null : shape.getSpeechStyle().frozen();
+      right = speech == null ? 0 : shape.getRight();
+      top = speech == null ? 0 : shape.getTop();
+
+      int left = (int) Math.floor(shape.getLeft());
+      int canvasTop = (int) Math.floor(Game.HEIGHT - shape.getTop());
+      area = swept(new java.awt.Rectangle(
+        left,
+        canvasTop,
+        (int) Math.ceil(shape.getRight()) - left + 1,
+        (int) Math.ceil(Game.HEIGHT - shape.getBottom()) - canvasTop + 1
+      ));
+    }
+
+    // Adds where r was at the start of the tick to r, plus a pixel all round
+    // for rounding.
+    private java.awt.Rectangle swept(java.awt.Rectangle r) {
+      // Canvas y runs down.
+      r.add(new java.awt.Rectangle(
+        (int) Math.round(r.x - moveX),
+        (int) Math.round(r.y + moveY),
+        r.width,
+        r.height
+      ));
+      r.grow(1, 1);
+      return r;
+    }
+
+    // The part of the canvas this sprite draws on, wherever it's drawn
+    // along its move. metrics measures its speech. The result mustn't be
+    // changed.
+    java.awt.Rectangle area(Function<Font, FontMetrics> metrics) {
+      if (speech == null) {
+        return area;
+      }
+      java.awt.Rectangle withSpeech = swept(speechStyle.area(
+        speech,
+        new Point(right, top),
+        TextStyle.ReferencePointLocation.BOTTOM_LEFT,
+        metrics.apply(speechStyle.getFont()),
+        new Point(right - 5, top - 5)
+      ));
+      withSpeech.add(area);
+      return withSpeech;
+    }
+
+    // Whether the shape is drawn as an outline.
+    boolean outlined() {
+      return !filled && !invisible;
+    }
+
+    // Whether the shape moved during the tick.
+    boolean moved() {
+      return moveX != 0 || moveY != 0;
+    }
+
+    // Whether this sprite has the same color, fill, visibility and speech
+    // as other.
+    boolean looksLike(Sprite other) {
+      return color.equals(other.color) &&
+        filled == other.filled &&
+        invisible == other.invisible &&
+        Objects.equals(speech, other.speech) &&
+        speechStyle == other.speechStyle;
+    }
+
+    abstract void fill(Graphics2D g);
+
+    // Adds the shape's outline to path, moved by dx and dy.
+    abstract void addTo(Path2D.Double path, double dx, double dy);
+
+    abstract void draw(Graphics2D g);
+
+    // Draws the shape, and returns how long its speech took to draw, in
+    // nanoseconds.
+    long render(Graphics2D g, double alpha) {
+      // Canvas y runs down.
+      double dx = moveX * (alpha - 1);
+      double dy = -moveY * (alpha - 1);
+      g.translate(dx, dy);
+
+      long speechNanos = 0;
+      if (speech != null) {
+        long start = System.nanoTime();
+        speechStyle.renderString(
+          speech,
+          new Point(right, top),
+          TextStyle.ReferencePointLocation.BOTTOM_LEFT,
+          g,
+          new Point(right - 5, top - 5)
+        );
+        speechNanos = System.nanoTime() - start;
+      }
+      if (!invisible) {
+        g.setColor(color);
+        if (filled) {
+          fill(g);
+        } else {
+          draw(g);
+        }
+      }
+
+      g.translate(-dx, -dy);
+      return speechNanos;
+    }
+  }
+
+  static class CircleSprite extends Sprite {
+    private final int left, top, diameter;
+
+    CircleSprite(Circle circle) {
+      super(circle);
+      Point center = circle.getCenter();
+      double radius = circle.getRadius();
+      left = (int) (center.getCanvasX() - radius);
+      top = (int) (center.getCanvasY() - radius);
+      diameter = (int) (radius * 2);
+    }
+
+    void fill(Graphics2D g) {
+      g.fillOval(left, top, diameter, diameter);
+    }
+
+    void draw(Graphics2D g) {
+      g.drawOval(left, top, diameter, diameter);
+    }
+
+    void addTo(Path2D.Double path, double dx, double dy) {
+      path.append(
+        new Ellipse2D.Double(left + dx, top + dy, diameter, diameter),
+        false
+      );
+    }
+  }
+
+  static class PolygonSprite extends Sprite {
+    private final int[] x, y;
+
+    PolygonSprite(ConvexPolygon polygon) {
+      super(polygon);
+      Point[] corners = polygon.corners();
+      x = new int[corners.length];
+      y = new int[corners.length];
+      for (int i = 0; i < corners.length; i++) {
+        x[i] = corners[i].getCanvasX();
+        y[i] = corners[i].getCanvasY();
+      }
+    }
+
+    void fill(Graphics2D g) {
+      g.fillPolygon(x, y, x.length);
+    }
+
+    void draw(Graphics2D g) {
+      g.drawPolygon(x, y, x.length);
+    }
+
+    void addTo(Path2D.Double path, double dx, double dy) {
+      long area = 0;
+      for (int i = 0, j = x.length - 1; i < x.length; j = i++) {
+        area += (long) x[j] * y[i] - (long) x[i] * y[j];
+      }
+      boolean reversed = (area > 0) != Batch.ELLIPSE_POSITIVE;
+      for (int k = 0; k < x.length; k++) {
+        int i = reversed ? x.length - 1 - k : k;
+        if (k == 0) {
+          path.moveTo(x[i] + dx, y[i] + dy);
+        } else {
+          path.lineTo(x[i] + dx, y[i] + dy);
+        }
+      }
+      path.closePath();
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package shapes;
+
+import java.util.*;
+
+// A uniform grid that buckets shapes by the cells their bounding boxes cover,
+// so that collision checks only need to look at shapes in nearby cells.
+//
+// A shape covering more than MAX_CELLS cells isn't bucketed, but kept in a
+// list that every query checks, and a query covering more cells than there
+// are shapes checks every shape instead of every cell. Either way, no update
+// or query takes longer than going through all the shapes.
+class SpatialHash {
+  static final double CELL_SIZE = 64.0;
+  static final int MAX_CELLS = 64;
+  // cells further out than this are merged with the ones this far out, so
+  // huge or infinite coordinates can't overflow the cell numbers
+  private static final int MAX_CELL = 1 << 30;
+
+  private Map<Long, java.util.List<Shape>> cells;
+  // the cell range {left, bottom, right, top} each shape currently covers
+  private Map<Shape, int[]> ranges;
+  // the shapes covering more than MAX_CELLS cells, which aren't in cells
+  private Set<Shape> oversized;
+
+  SpatialHash() {
+    cells = new HashMap<Long, java.util.List<Shape>>();
+    ranges = new LinkedHashMap<Shape, int[]>();
+    oversized = new LinkedHashSet<Shape>();
+  }
+
+  // Re-buckets shape according to its current bounding box.
+  void update(Shape shape) {
+    int[] range = new int[] {
+      cell(shape.getLeft()),
+      cell(shape.getBottom()),
+      cell(shape.getRight()),
+      cell(shape.getTop())
+    };
+    int[] oldRange = ranges.get(shape);
+    if (oldRange != null && Arrays.equals(oldRange, range)) {
+      return;
+    }
+
+    if (oldRange != null) {
+      removeFromCells(shape, oldRange);
+    }
+    if (cellCount(range[0], range[1], range[2], range[3]) > MAX_CELLS) {
+      oversized.add(shape);
+    } else {
+      for (int x = range[0]; x <= range[2]; x++) {
+        for (int y = range[1]; y <= range[3]; y++) {
+          Long key = key(x, y);
+          java.util.List<Shape> bucket = cells.get(key);
+          if (bucket == null) {
+            bucket = new ArrayList<Shape>();
+            cells.put(key, bucket);
+          }
+          bucket.add(shape);
+        }
+      }
+    }
+    ranges.put(shape, range);
+  }
+
+  boolean isEmpty() {
+    return ranges.isEmpty();
+  }
+
+  void remove(Shape shape) {
+    int[] range = ranges.remove(shape);
+    if (range != null) {
+      removeFromCells(shape, range);
+    }
+  }
+
+  // Returns every shape whose cells overlap the given box. Each shape is
+  // reported once, from the lowest-leftmost cell it shares with the box,
+  // and oversized shapes come last.
+  java.util.List<Shape> query(
+    double left,
+    double bottom,
+    double right,
+    double top
+  ) {
+    int x0 = cell(left), y0 = cell(bottom), x1 = cell(right), y1 = cell(top);
+    java.util.List<Shape> found = new ArrayList<Shape>();
+    if (cellCount(x0, y0, x1, y1) > Math.max(MAX_CELLS, ranges.size())) {
+      // quicker to go through the shapes than the cells
+      for (Map.Entry<Shape, int[]> entry : ranges.entrySet()) {
+        if (overlaps(entry.getValue(), x0, y0, x1, y1)) {
+          found.add(entry.getKey());
+        }
+      }
+      return found;
+    }
+    for (int x = x0; x <= x1; x++) {
+      for (int y = y0; y <= y1; y++) {
+        java.util.List<Shape> bucket = cells.get(key(x, y));
+        if (bucket == null) continue;
+        for (Shape shape : bucket) {
+          int[] range = ranges.get(shape);
+          if (x == Math.max(range[0], x0) && y == Math.max(range[1], y0)) {
+            found.add(shape);
+          }
+        }
+      }
+    }
+    for (Shape shape : oversized) {
+      if (overlaps(ranges.get(shape), x0, y0, x1, y1)) {
+        found.add(shape);
+      }
+    }
+    return found;
+  }
+
+  private void removeFromCells(Shape shape, int[] range) {
+    if (oversized.remove(shape)) return;
+
+    for (int x = range[0]; x <= range[2]; x++) {
+      for (int y = range[1]; y <= range[3]; y++) {
+        Long key = key(x, y);
+        java.util.List<Shape> bucket = cells.get(key);
+        if (bucket == null) continue;
+        bucket.remove(shape);
+        if (bucket.isEmpty()) {
+          cells.remove(key);
+        }
+      }
+    }
+  }
+
+  static int cell(double coordinate) {
+    double cell = Math.floor(coordinate / CELL_SIZE);
+    return (int) Math.max(-MAX_CELL, Math.min(MAX_CELL, cell));
+  }
+
+  // How many cells there are from (x0, y0) to (x1, y1).
+  static long cellCount(int x0, int y0, int x1, int y1) {
+    return Math.max(0, (long) x1 - x0 + 1) * Math.max(0, (long) y1 - y0 + 1);
+  }
+
+  private static boolean overlaps(
+    int[] range,
+    int x0,
+    int y0,
+    int x1,
+    int y1
+  ) {
+    return
+      range[0] <= x1 && range[2] >= x0 &&
+      range[1] <= y1 && range[3] >= y0;
+  }
+
+  static Long key(int x, int y) {
+    return ((long) x << 32) | (y & 0xffffffffL);
+  }
+}
@@ -0,0 +1,119 @@
+package shapes;
+
+import java.util.*;
+
+// Finds every pair of touching shapes by keeping shapes sorted by the left
+// edges of their bounding boxes. Shapes move only a little between frames, so
+// the array stays nearly sorted and insertion sort re-sorts it in close to
+// linear time.
+class SweepAndPrune {
+  private Shape[] sorted;
+  private double[] left, right, bottom, top;
+  private int count;
+  private Set<Shape> members;
+
+  SweepAndPrune() {
+    sorted = new Shape[16];
+    left = new double[16];
+    right = new double[16];
+    bottom = new double[16];
+    top = new double[16];
+    count = 0;
+    members = new HashSet<Shape>();
+  }
+
+  Shape[][] touchingPairs(Collection<Shape> shapes) {
+    updateMembership(shapes);
+    sort();
+
+    java.util.List<Shape[]> pairs = new ArrayList<Shape[]>();
+    for (int i = 0; i < count; i++) {
+      double reach = right[i] + Geometry.TOLERANCE;
+      for (int j = i + 1; j < count && left[j] <= reach; j++) {
+        if (bottom[j] > top[i] + Geometry.TOLERANCE ||
+            top[j] < bottom[i] - Geometry.TOLERANCE) {
+          continue;
+        }
+        // bounding boxes overlap, so check the shapes themselves
+        if (sorted[i].touches(sorted[j])) {
+          pairs.add(new Shape[] { sorted[i], sorted[j] });
+        }
+      }
+    }
+    return pairs.toArray(new Shape[0][]);
+  }
+
+  // Drops shapes that have left the game, appends new ones, and refreshes
+  // every shape's cached bounds. A substepping shape's bounds cover its
+  // whole path, since it touched whatever it passed.
+  private void updateMembership(Collection<Shape> shapes) {
+    int kept = 0;
+    for (int i = 0; i < count; i++) {
+      Shape s = sorted[i];
+      if (s.isDestroyed() || !shapes.contains(s)) {
+        members.remove(s);
+        continue;
+      }
+      sorted[kept++] = s;
+    }
+    for (int i = kept; i < count; i++) {
+      sorted[i] = null;
+    }
+    count = kept;
+
+    for (Shape s : shapes) {
+      if (s.isDestroyed() || members.contains(s)) continue;
+      ensureCapacity(count + 1);
+      sorted[count++] = s;
+      members.add(s);
+    }
+
+    for (int i = 0; i < count; i++) {
+      double[] swept = sorted[i].sweptBounds();
+      if (swept != null) {
+        left[i] = swept[0];
+        bottom[i] = swept[1];
+        right[i] = swept[2];
+        top[i] = swept[3];
+        continue;
+      }
+      left[i] = sorted[i].getLeft();
+      right[i] = sorted[i].getRight();
+      bottom[i] = sorted[i].getBottom();
+      top[i] = sorted[i].getTop();
+    }
+  }
+
+  private void sort() {
+    for (int i = 1; i < count; i++) {
+      Shape s = sorted[i];
+      double l = left[i], r = right[i], b = bottom[i], t = top[i];
+      int j = i - 1;
+      while (j >= 0 && left[j] > l) {
+        sorted[j + 1] = sorted[j];
+        left[j + 1] = left[j];
+        right[j + 1] = right[j];
+        bottom[j + 1] = bottom[j];
+        top[j + 1] = top[j];
+        j--;
+      }
+      sorted[j + 1] = s;
+      left[j + 1] = l;
+      right[j + 1] = r;
+      bottom[j + 1] = b;
+      top[j + 1] = t;
+    }
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= sorted.length) {
+      return;
+    }
+    int newLength = Math.max(capacity, sorted.length * 2);
+    sorted = Arrays.copyOf(sorted, newLength);
+    left = Arrays.copyOf(left, newLength);
+    right = Arrays.copyOf(right, newLength);
+    bottom = Arrays.copyOf(bottom, newLength);
+    top = Arrays.copyOf(top, newLength);
+  }
+}
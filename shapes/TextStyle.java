@@ -1,7 +1,10 @@
 package shapes;
 
 import java.awt.*;
+import java.awt.font.*;
 import java.awt.geom.*;
+import java.util.*;
+import java.util.function.*;
 
 /**
  * Used to change the visual style of text displayed in the game. Can be used
@@ -19,14 +22,31 @@ import java.awt.geom.*;
  * </code>
  */
 public class TextStyle {
+  // the space around text with a background
+  private static final int BOX_MARGIN = 3;
+  // the most strings a frozen style keeps laid out
+  private static final int MAX_LAYOUTS = 256;
+
   private String fontName;
   private int fontSize;
   private Color color;
   private Color backgroundColor;
   private boolean bold;
   private boolean italic;
+  // an unchanging copy of this style for the canvas to draw with, or null if
+  // this style has changed since the copy was made
+  private TextStyle frozen;
+  // the font, or null if it hasn't been made since this style changed
+  private Font font;
+  // In a frozen copy, the strings laid out most recently, least recently
+  // used first. A style that changes gets a new frozen copy, so these never
+  // go out of date. Both the game loop and the painting thread use this.
+  // null in styles that can change.
+  private final Map<LayoutKey, Layout> layouts;
 
-  enum ReferencePointLocation { CENTER, BOTTOM_LEFT, TOP_LEFT, BOTTOM_CENTER };
+  enum ReferencePointLocation {
+    CENTER, BOTTOM_LEFT, TOP_LEFT, TOP_RIGHT, BOTTOM_CENTER
+  };
 
   /**
    * Constructs a new text style with the given font, size and color.
@@ -37,6 +57,7 @@ public class TextStyle {
    * @param color     the text's color.
    */
   public TextStyle(String fontName, int fontSize, Color color) {
+    layouts = null;
     setFontName(fontName);
     setFontSize(fontSize);
     setColor(color);
@@ -44,20 +65,194 @@ public class TextStyle {
     setItalic(italic);
   }
 
+  @SuppressWarnings("serial")
+  private TextStyle(TextStyle style) {
+    this.fontName = style.fontName;
+    this.fontSize = style.fontSize;
+    this.color = style.color;
+    this.backgroundColor = style.backgroundColor;
+    this.bold = style.bold;
+    this.italic = style.italic;
+    this.frozen = this;
+    this.font = style.getFont();
+    this.layouts = new LinkedHashMap<LayoutKey, Layout>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<LayoutKey, Layout> e) {
+        return size() > MAX_LAYOUTS;
+      }
+    };
+  }
+
+  // Returns a copy of this style that never changes, so that it can be drawn
+  // with while the game keeps running. The copy is reused until this style
+  // changes.
+  TextStyle frozen() {
+    if (frozen == null) {
+      frozen = new TextStyle(this);
+    }
+    return frozen;
+  }
+
   void applyTo(Graphics2D g) {
     g.setColor(color);
     g.setFont(getFont());
   }
 
   Font getFont() {
+    if (font != null) {
+      return font;
+    }
     int style;
     if (!bold && !italic) {
       style = Font.PLAIN;
     } else {
       style = (bold ? Font.BOLD : 0) | (italic ? Font.ITALIC : 0);
     }
-    
-    return new Font(fontName, style, fontSize);
+
+    font = new Font(fontName, style, fontSize);
+    return font;
+  }
+
+  // Called whenever this style changes.
+  private void changed() {
+    frozen = null;
+    font = null;
+  }
+
+  // A string laid out with one font render context. The same string and
+  // context always give the same metrics.
+  private static class LayoutKey {
+    final String string;
+    final FontRenderContext context;
+
+    LayoutKey(String string, FontRenderContext context) {
+      this.string = string;
+      this.context = context;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof LayoutKey)) return false;
+      LayoutKey other = (LayoutKey) o;
+      return string.equals(other.string) && context.equals(other.context);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * string.hashCode() + context.hashCode();
+    }
+  }
+
+  // How renderString() lays out a string's box, wherever it's put.
+  private class Layout {
+    final FontMetrics metrics;
+    final String[] lines;
+    final double wordHeight, spaceHeight;
+    // the box's size, not counting the descent of the bottom line
+    final double width, height;
+
+    Layout(String string, FontMetrics metrics) {
+      this.metrics = metrics;
+      // find height and width of rendered speech
+      lines = string.split("\n");
+      double width = 0.0;
+      for (String line : lines) {
+        width = Math.max(width, metrics.stringWidth(line));
+      }
+      // getAscent() includes room for accents, etc., so we shrink it (by
+      // an arbitrary amount)
+      wordHeight = metrics.getAscent() * 0.8;
+      spaceHeight = metrics.getHeight() - wordHeight;
+      double height =
+        (lines.length - 1) * spaceHeight + lines.length * wordHeight;
+      if (backgroundColor != null) {
+        width += 2 * BOX_MARGIN;
+        height += 2 * BOX_MARGIN;
+      }
+      this.width = width;
+      this.height = height;
+    }
+
+    // Where the bottom left of the box goes.
+    Point bottomLeft(
+      Point referencePoint,
+      ReferencePointLocation referenceLocation
+    ) {
+      Vector offset = null; // from reference point to bottom left
+      switch (referenceLocation) {
+        case CENTER:
+          offset = new Vector(width / -2.0, height / -2.0);
+          break;
+        case BOTTOM_LEFT:
+          offset = new Vector(0, 0);
+          break;
+        case TOP_LEFT:
+          offset = new Vector(0, -1.0 * height);
+          break;
+        case TOP_RIGHT:
+          offset = new Vector(-1.0 * width, -1.0 * height);
+          break;
+        case BOTTOM_CENTER:
+          offset = new Vector(width / -2.0, 0);
+          break;
+      }
+      return referencePoint.translation(offset);
+    }
+  }
+
+  // How string is laid out when drawn with the given font render context.
+  // metrics gives the metrics of this style's font in that context, and is
+  // only used if the layout isn't saved already.
+  private Layout layout(
+    String string,
+    FontRenderContext context,
+    Function<Font, FontMetrics> metrics
+  ) {
+    if (layouts == null) {
+      return new Layout(string, metrics.apply(getFont()));
+    }
+    LayoutKey key = new LayoutKey(string, context);
+    Layout layout;
+    synchronized (layouts) {
+      layout = layouts.get(key);
+    }
+    if (layout == null) {
+      layout = new Layout(string, metrics.apply(getFont()));
+      synchronized (layouts) {
+        layouts.put(key, layout);
+      }
+    }
+    return layout;
+  }
+
+  // The part of the canvas that renderString() draws on, with some room to
+  // spare for letters that stick out of their box.
+  java.awt.Rectangle area(
+    String string,
+    Point referencePoint,
+    ReferencePointLocation referenceLocation,
+    FontMetrics metrics,
+    Point speechOrigin
+  ) {
+    Layout layout =
+      layout(string, metrics.getFontRenderContext(), font -> metrics);
+    Point bottomLeft = layout.bottomLeft(referencePoint, referenceLocation);
+    int spare = metrics.getHeight() / 2;
+    int descent = metrics.getDescent();
+    int left = bottomLeft.getCanvasX() - spare;
+    int bottom = bottomLeft.getCanvasY() + descent + spare;
+    int top = bottom - (int) layout.height - 2 * (descent + spare);
+    java.awt.Rectangle area = new java.awt.Rectangle(
+      left,
+      top,
+      (int) layout.width + 2 * spare,
+      bottom - top
+    );
+    if (speechOrigin != null && backgroundColor != null) {
+      area.add(speechOrigin.getCanvasX(), speechOrigin.getCanvasY());
+      area.grow(1, 1);
+    }
+    return area;
   }
 
   void renderString(
@@ -67,43 +262,15 @@ public class TextStyle {
     Graphics2D g,
     Point speechOrigin
   ) {
-    int boxMargin = 3;
-
-    // find height and width of rendered speech
-    FontMetrics metrics = g.getFontMetrics(getFont());
-    String[] lines = string.split("\n");
-    double width = 0.0;
-    for (String line : lines) {
-      width = Math.max(width, metrics.stringWidth(line));
-    }
-    // getAscent() includes room for accents, etc., so we shrink it (by
-    // an arbitrary amount)
-    double wordHeight = metrics.getAscent() * 0.8;
-    double spaceHeight = metrics.getHeight() - wordHeight;
-    double height =
-      (lines.length - 1) * spaceHeight + lines.length * wordHeight;
-    Vector offset = null; // from reference point to bottom left
-    if (backgroundColor != null) {
-      width += 2 * boxMargin;
-      height += 2 * boxMargin;
-    }
-    switch (referenceLocation) {
-      case CENTER:
-        offset = new Vector(width / -2.0, height / -2.0);
-        break;
-      case BOTTOM_LEFT:
-        offset = new Vector(0, 0);
-        break;
-      case TOP_LEFT:
-        offset = new Vector(0, -1.0 * height);
-        break;
-      case BOTTOM_CENTER:
-        offset = new Vector(width / -2.0, 0);
-        break;
-    }
-    Point bottomLeft = referencePoint.translation(offset);
+    Layout layout =
+      layout(string, g.getFontRenderContext(), g::getFontMetrics);
+    FontMetrics metrics = layout.metrics;
+    String[] lines = layout.lines;
+    double height = layout.height;
+    Point bottomLeft = layout.bottomLeft(referencePoint, referenceLocation);
     Point textBottomLeft = bottomLeft;
-    Vector lineOffset = new Vector(0, wordHeight + spaceHeight);
+    Vector lineOffset =
+      new Vector(0, layout.wordHeight + layout.spaceHeight);
 
     // render background
     if (backgroundColor != null) {
@@ -114,12 +281,12 @@ public class TextStyle {
       g.fillRect(
         topLeft.getCanvasX(),
         topLeft.getCanvasY(),
-        (int) width,
+        (int) layout.width,
         (int) height
       );
 
       textBottomLeft = bottomLeft.translation(
-        new Vector(boxMargin, boxMargin + metrics.getDescent())
+        new Vector(BOX_MARGIN, BOX_MARGIN + metrics.getDescent())
       );
 
       // render speech bubble "foot"
@@ -203,6 +370,7 @@ public class TextStyle {
       throw new IllegalArgumentException("fontName must not be null.");
     }
     this.fontName = fontName;
+    changed();
   }
 
   /**
@@ -226,6 +394,7 @@ public class TextStyle {
       throw new IllegalArgumentException("fontSize must be positive");
     }
     this.fontSize = fontSize;
+    changed();
   }
 
   /**
@@ -249,6 +418,7 @@ public class TextStyle {
       throw new IllegalArgumentException("color must not be null.");
     }
     this.color = color;
+    changed();
   }
 
   /**
@@ -269,6 +439,7 @@ public class TextStyle {
    */
   public void setBold(boolean bold) {
     this.bold = bold;
+    changed();
   }
 
   /**
@@ -289,6 +460,7 @@ public class TextStyle {
    */
   public void setItalic(boolean italic) {
     this.italic = italic;
+    changed();
   }
 
   /**
@@ -314,6 +486,7 @@ public class TextStyle {
    */
   public void setBackgroundColor(Color background) {
     this.backgroundColor = background;
+    changed();
   }
 
   /**
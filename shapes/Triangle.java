@@ -41,11 +41,11 @@ public class Triangle extends ConvexPolygon {
   public void update() {}
 
   // Contract: zeroth corner is the tip
-  Point[] getUnrotatedCorners() {
-    return new Point[] {
-      getCenter().translation(new Vector(size, 0)),
-      getCenter().translation(new Vector(-size, size)),
-      getCenter().translation(new Vector(-size, -size))
+  double[] getCornerOffsets() {
+    return new double[] {
+      size, 0,
+      -size, size,
+      -size, -size
     };
   }
 
@@ -76,6 +76,7 @@ public class Triangle extends ConvexPolygon {
       throw new IllegalArgumentException("size must be positive.");
     }
     this.size = size;
+    sizeChanged();
   }
 
   /**
@@ -0,0 +1,447 @@
+package shapes;
+
+import java.awt.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+// Everything that belongs to one game: its shapes, counters, text, settings
+// and measurements, and the mouse and keyboard it listens to. Each game has
+// its own world, so several games can run side by side in one program
+// without seeing each other's shapes.
+//
+// Game's static methods act on the current world, which is the world bound
+// to the calling thread, or the default world if the thread hasn't bound
+// one. A game binds its world while it's being set up and while its frames
+// run. Shapes and counters join the world that's current when they're made,
+// and afterwards always use that world, whichever thread they're used on.
+class World {
+  private static final World defaultWorld = new World();
+  // whether a game has taken the default world yet
+  private static boolean defaultTaken;
+  private static final ThreadLocal<World> current = new ThreadLocal<World>();
+
+  final Set<Shape> solidShapes = new LinkedHashSet<Shape>();
+  final Set<Shape> allShapes = new LinkedHashSet<Shape>();
+  final SpatialHash shapeGrid = new SpatialHash();
+  final SpatialHash solidGrid = new SpatialHash();
+  final AABBTree shapeTree = new AABBTree();
+  final SweepAndPrune sweepAndPrune = new SweepAndPrune();
+  Shape[][] touchingPairs;
+  boolean tracksTouchingPairs;
+  // the shapes that substepped during the last tick. The tree only knows
+  // where they ended up, so they're checked separately for touching.
+  private final java.util.List<Shape> sweepers = new ArrayList<Shape>();
+
+  // Only the game loop touches this; the canvas draws from snapshots.
+  final Layers layers = new Layers();
+  // how the shapes that have left the layers since the last snapshot looked
+  // in it, or null if so many have left that the canvas might as well paint
+  // everything
+  private java.util.List<Snapshot.Sprite> vanished =
+    new ArrayList<Snapshot.Sprite>();
+  private static final int MAX_VANISHED = 256;
+
+  final java.util.List<Counter> counters = new ArrayList<Counter>();
+  TextStyle counterStyle;
+
+  String title;
+  TextStyle titleStyle;
+  int titleDuration;
+
+  String subtitle;
+  TextStyle subtitleStyle;
+  int subtitleDuration;
+
+  Color backgroundColor;
+  Game.BorderBehavior borderBehavior;
+
+  double tickRate;
+  int maxCatchUpTicks;
+  volatile long lateTicks;
+  volatile long droppedTicks;
+  // frames per second during the most recent headless run
+  double ticksPerSecond;
+
+  final FrameStats frameStats = new FrameStats();
+  // time spent in update() methods so far this tick
+  long updateNanos;
+  boolean showsFrameStats;
+  TextStyle frameStatsStyle;
+
+  int updateThreads;
+  // null when shapes move one at a time
+  ParallelMoves parallelMoves;
+
+  // how many Geometry.maxMovement(Shape, Point, Shape) calls this world's
+  // shapes have made, and how many of them were answered by the bounding box
+  // check alone. Shapes can plan their moves on several threads at once,
+  // hence the adders.
+  final LongAdder movementChecks = new LongAdder();
+  final LongAdder skippedMovementChecks = new LongAdder();
+
+  // shapes made during spawnAll() that haven't joined the world yet, or
+  // null if spawnAll() isn't running
+  private java.util.List<Shape> spawning;
+
+  final Mouse mouse = new Mouse();
+  final Keyboard keyboard = new Keyboard();
+
+  World() {
+    backgroundColor = Color.BLUE;
+    borderBehavior = Game.BorderBehavior.NONE;
+    tickRate = 50;
+    maxCatchUpTicks = 5;
+
+    titleStyle = TextStyle.sansSerif();
+    titleStyle.setFontSize(40);
+    counterStyle = TextStyle.sansSerif();
+    subtitleStyle = TextStyle.sansSerif();
+
+    frameStatsStyle = TextStyle.monospaced();
+    frameStatsStyle.setFontSize(12);
+    frameStatsStyle.setBackgroundColor(Color.WHITE);
+  }
+
+  // The world that Game's static methods, and new shapes and counters, use
+  // on this thread.
+  static World current() {
+    World world = current.get();
+    return world != null ? world : defaultWorld;
+  }
+
+  // Makes world current on this thread, or goes back to the default world
+  // if world is null. Returns the world that was bound before.
+  static World bind(World world) {
+    World previous = current.get();
+    if (world == null) {
+      current.remove();
+    } else {
+      current.set(world);
+    }
+    return previous;
+  }
+
+  // A world for a new game. The first game gets the default world, so a
+  // program with one game works the same from any thread; later games get
+  // worlds of their own.
+  static synchronized World forNewGame() {
+    if (!defaultTaken) {
+      defaultTaken = true;
+      return defaultWorld;
+    }
+    return new World();
+  }
+
+  void addShape(Shape shape) {
+    if (spawning != null) {
+      spawning.add(shape);
+      return;
+    }
+    allShapes.add(shape);
+    updateBounds(shape);
+  }
+
+  // Makes count shapes with factory, then adds them all at once. Until
+  // they're added, changes to the new shapes don't touch the spatial
+  // indexes, and at the end the bounding volume tree takes them in bulk.
+  Shape[] spawnAll(int count, IntFunction<? extends Shape> factory) {
+    // a factory can call spawnAll() itself; the outermost call adds
+    // everything
+    boolean outermost = spawning == null;
+    if (outermost) {
+      spawning = new ArrayList<Shape>(count);
+    }
+    layers.reserve(0, count);
+
+    Shape[] made = new Shape[count];
+    try {
+      for (int i = 0; i < count; i++) {
+        made[i] = factory.apply(i);
+      }
+    } finally {
+      if (outermost) {
+        java.util.List<Shape> spawned = spawning;
+        spawning = null;
+        addAll(spawned);
+      }
+    }
+    return made;
+  }
+
+  private void addAll(java.util.List<Shape> shapes) {
+    allShapes.addAll(shapes);
+    java.util.List<Shape> placed = new ArrayList<Shape>(shapes.size());
+    for (Shape shape : shapes) {
+      if (shape.getCenter() == null) continue;
+      placed.add(shape);
+      shapeGrid.update(shape);
+      if (shape.isSolid()) {
+        solidGrid.update(shape);
+      }
+    }
+    shapeTree.insertAll(placed);
+  }
+
+  void removeShape(Shape shape) {
+    allShapes.remove(shape);
+    removeFromLayers(shape);
+    shapeGrid.remove(shape);
+    shapeTree.remove(shape);
+  }
+
+  void addSolid(Shape shape) {
+    solidShapes.add(shape);
+    // shapes that aren't in the world yet are indexed when they join it
+    if (shape.getCenter() != null && allShapes.contains(shape)) {
+      solidGrid.update(shape);
+    }
+  }
+
+  void removeSolid(Shape shape) {
+    solidShapes.remove(shape);
+    solidGrid.remove(shape);
+  }
+
+  // Called whenever a shape's bounding box may have changed.
+  void updateBounds(Shape shape) {
+    if (shape.getCenter() == null || !allShapes.contains(shape)) {
+      // the shape is still being constructed, or has been removed
+      return;
+    }
+    shapeGrid.update(shape);
+    shapeTree.update(shape);
+    if (shape.isSolid()) {
+      solidGrid.update(shape);
+    }
+  }
+
+  // Returns the shapes that could obstruct mover while its bounding box
+  // sweeps through the given region. Solid movers are obstructed by every
+  // shape; other shapes are only obstructed by solid shapes.
+  java.util.List<Shape> getObstacles(
+    Shape mover,
+    double left,
+    double bottom,
+    double right,
+    double top
+  ) {
+    SpatialHash grid = mover.isSolid() ? shapeGrid : solidGrid;
+    return grid.query(left, bottom, right, top);
+  }
+
+  void removeFromLayers(Shape shape) {
+    layers.remove(shape);
+    if (shape.lastSprite != null) {
+      vanished(shape.lastSprite);
+      shape.lastSprite = null;
+    }
+  }
+
+  // Remembers that sprite's part of the canvas needs painting over.
+  private void vanished(Snapshot.Sprite sprite) {
+    if (vanished == null) return;
+    if (vanished.size() == MAX_VANISHED) {
+      vanished = null;
+    } else {
+      vanished.add(sprite);
+    }
+  }
+
+  void setLayer(Shape shape, int layer) {
+    shape.looksChanged = true;
+    layers.add(shape, layer);
+  }
+
+  int getLayerOf(Shape shape) {
+    return layers.layerOf(shape);
+  }
+
+  // Called whenever a shape's position, size, color, fill or visibility
+  // changes, so a cached layer it's in gets drawn again.
+  void appearanceChanged(Shape shape) {
+    shape.looksChanged = true;
+    layers.changed(shape);
+  }
+
+  void addCounter(Counter counter) {
+    counters.add(counter);
+  }
+
+  void removeCounter(Counter counter) {
+    counters.remove(counter);
+  }
+
+  boolean hasTitle() {
+    return titleDuration > 0;
+  }
+
+  boolean hasSubtitle() {
+    return subtitleDuration > 0 || subtitleDuration == -1;
+  }
+
+  // Moves and updates every shape, and removes the destroyed ones.
+  void autoUpdate() {
+    // shapes can create and destroy other shapes as they update, so work
+    // from a copy
+    Shape[] shapes = allShapes.toArray(new Shape[0]);
+    long start = System.nanoTime();
+    if (parallelMoves != null) {
+      parallelMoves.autoUpdate(shapes);
+    } else {
+      for (Shape s : shapes) {
+        s.autoUpdate();
+      }
+    }
+    long moved = System.nanoTime();
+    frameStats.record(FrameStats.Phase.AUTO_UPDATE, moved - start);
+
+    sweepers.clear();
+    for (Shape s : shapes) {
+      if (s.hasSweep()) {
+        sweepers.add(s);
+      }
+    }
+
+    for (Shape s : shapes) {
+      s.update();
+      if (s.isDestroyed()) {
+        if (s.isSolid()) {
+          removeSolid(s);
+        }
+        removeFromLayers(s);
+        shapeGrid.remove(s);
+        shapeTree.remove(s);
+        allShapes.remove(s);
+      }
+    }
+    updateNanos += System.nanoTime() - moved;
+
+    if (tracksTouchingPairs) {
+      long pairsStart = System.nanoTime();
+      touchingPairs = sweepAndPrune.touchingPairs(allShapes);
+      frameStats.addCollisionTime(System.nanoTime() - pairsStart);
+    }
+  }
+
+  Shape[] shapesIn(double left, double bottom, double right, double top) {
+    long start = System.nanoTime();
+    java.util.List<Shape> candidates = new ArrayList<Shape>();
+    shapeTree.query(left, bottom, right, top, candidates);
+    java.util.List<Shape> found = new ArrayList<Shape>();
+    for (Shape s : candidates) {
+      if (s.isDestroyed()) continue;
+      if (s.getLeft() <= right && s.getRight() >= left &&
+          s.getBottom() <= top && s.getTop() >= bottom) {
+        found.add(s);
+      }
+    }
+    frameStats.addCollisionTime(System.nanoTime() - start);
+    return found.toArray(new Shape[0]);
+  }
+
+  Shape[] shapesTouching(Shape shape) {
+    long start = System.nanoTime();
+    java.util.List<Shape> candidates = new ArrayList<Shape>();
+    // a substepping shape can touch anything along its path
+    double[] swept = shape.sweptBounds();
+    if (swept == null) {
+      swept = new double[] {
+        shape.getLeft(), shape.getBottom(), shape.getRight(), shape.getTop()
+      };
+    }
+    shapeTree.query(
+      swept[0] - Geometry.TOLERANCE,
+      swept[1] - Geometry.TOLERANCE,
+      swept[2] + Geometry.TOLERANCE,
+      swept[3] + Geometry.TOLERANCE,
+      candidates
+    );
+    java.util.List<Shape> found = new ArrayList<Shape>();
+    for (Shape s : candidates) {
+      if (s != shape && shape.touches(s)) {
+        found.add(s);
+      }
+    }
+    // shapes whose paths went past this one, wherever they are now
+    for (Shape s : sweepers) {
+      if (s != shape && !found.contains(s) && shape.touches(s)) {
+        found.add(s);
+      }
+    }
+    frameStats.addCollisionTime(System.nanoTime() - start);
+    return found.toArray(new Shape[0]);
+  }
+
+  Shape[][] getTouchingPairs() {
+    if (!tracksTouchingPairs) {
+      // pairs aren't found until someone asks for them
+      tracksTouchingPairs = true;
+      long start = System.nanoTime();
+      touchingPairs = sweepAndPrune.touchingPairs(allShapes);
+      frameStats.addCollisionTime(System.nanoTime() - start);
+    }
+    return touchingPairs;
+  }
+
+  void setUpdateThreads(int threads) {
+    if (threads == updateThreads) {
+      return;
+    }
+    if (parallelMoves != null) {
+      parallelMoves.shutdown();
+    }
+    updateThreads = threads;
+    parallelMoves = threads > 0 ? new ParallelMoves(threads) : null;
+  }
+
+  void countLateTicks(long ticks) {
+    lateTicks += ticks;
+  }
+
+  void countDroppedTicks(long ticks) {
+    droppedTicks += ticks;
+  }
+
+  // Captures what the canvas needs to draw the world as it is now.
+  // tickTime is when the most recent tick was scheduled.
+  Snapshot snapshot(long tickTime) {
+    if (hasTitle()) {
+      // the canvas paints everything after a title anyway
+      vanished = new ArrayList<Snapshot.Sprite>();
+      return new Snapshot(
+        tickTime,
+        backgroundColor,
+        title,
+        titleStyle.frozen()
+      );
+    }
+
+    java.util.List<Integer> numbers = layers.numbers();
+    Snapshot.Layer[] drawn = new Snapshot.Layer[numbers.size()];
+    java.util.List<Snapshot.Sprite> changed =
+      new ArrayList<Snapshot.Sprite>();
+    for (int i = 0; i < drawn.length; i++) {
+      drawn[i] = layers.get(numbers.get(i)).snapshot(changed);
+    }
+    Snapshot.Sprite[] changedSprites = null;
+    if (vanished != null) {
+      changed.addAll(vanished);
+      changedSprites = changed.toArray(new Snapshot.Sprite[0]);
+    }
+    vanished = new ArrayList<Snapshot.Sprite>();
+
+    return new Snapshot(
+      tickTime,
+      backgroundColor,
+      drawn,
+      changedSprites,
+      Counter.describe(counters),
+      counterStyle.frozen(),
+      hasSubtitle() ? subtitle : null,
+      subtitleStyle.frozen(),
+      showsFrameStats ? frameStats.toString() : null,
+      frameStatsStyle.frozen()
+    );
+  }
+}